@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+    static final int ROWS = 10000;
+
+    @Param({"1", "10", "100", "1000"})
+    public int size;
+
+    @Param({"batch", "rows"})
+    public String mode;
+
+    private JdbcConnectionPool source;
+    private Database database;
+    private Timestamp now;
+
+    @Setup
+    public void setup() throws SQLException {
+        source = Fixture.source();
+        database = new Database(new Connector.Pool(source, 4), 64);
+        Fixture.create(database);
+        now = new Timestamp(System.currentTimeMillis());
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() throws SQLException {
+        database.query("TRUNCATE TABLE items").execute();
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+        source.dispose();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long insert() throws SQLException {
+        Batch batch = database.batch("INSERT INTO items (title, value, disabled, modified) VALUES (?,?,?,?)").chunk(size);
+        if ("rows".equals(mode)) batch.rows(size);
+        for (int i = 0; i < ROWS; ++i)
+            batch.values("item", i, false, now);
+        return batch.update();
+    }
+}
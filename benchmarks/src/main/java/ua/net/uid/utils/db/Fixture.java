@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import ua.net.uid.utils.db.dao.Column;
+import ua.net.uid.utils.db.dao.Entity;
+import ua.net.uid.utils.db.dao.Id;
+import ua.net.uid.utils.db.dao.Table;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+public final class Fixture {
+    public static final Fetcher<Item> FETCHER = Fixture::fetch;
+    public static final RowFetcher<Item> ROW_FETCHER = Fixture::fetch;
+
+    private Fixture() {
+    }
+
+    public static JdbcConnectionPool source() {
+        return JdbcConnectionPool.create(String.format("jdbc:h2:mem:bench%d;DB_CLOSE_DELAY=-1", System.nanoTime()), "sa", "");
+    }
+
+    public static void create(Session session) throws SQLException {
+        session.query(
+                "CREATE TABLE IF NOT EXISTS items (" +
+                        "id BIGINT AUTO_INCREMENT NOT NULL PRIMARY KEY, " +
+                        "title VARCHAR(64), " +
+                        "value INTEGER NOT NULL, " +
+                        "disabled BOOLEAN NOT NULL, " +
+                        "modified TIMESTAMP NOT NULL" +
+                        ")"
+        ).execute();
+    }
+
+    public static void fill(Session session, int rows) throws SQLException {
+        create(session);
+        session.query("TRUNCATE TABLE items").execute();
+        Batch batch = session.batch("INSERT INTO items (id, title, value, disabled, modified) VALUES (?,?,?,?,?)").chunk(1000);
+        final Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int i = 1; i <= rows; ++i)
+            batch.values((long) i, "item " + i, i % 100, i % 2 == 0, now);
+        batch.update();
+    }
+
+    public static Item fetch(ResultSet result) throws SQLException {
+        Item item = new Item();
+        item.id = result.getLong("id");
+        item.title = result.getString("title");
+        item.value = result.getInt("value");
+        item.disabled = result.getBoolean("disabled");
+        item.modified = result.getTimestamp("modified");
+        return item;
+    }
+
+    public static Item fetch(RowReader row) throws SQLException {
+        Item item = new Item();
+        item.id = row.getLong("id");
+        item.title = row.getString("title");
+        item.value = row.getInt("value");
+        item.disabled = row.getBoolean("disabled");
+        item.modified = row.getTimestamp("modified");
+        return item;
+    }
+
+    @Table("items")
+    public static final class Item implements Entity<Long> {
+        @Id(generated = true)
+        public Long id;
+        @Column
+        public String title;
+        @Column
+        public int value;
+        @Column
+        public boolean disabled;
+        @Column
+        public Timestamp modified;
+
+        @Override
+        public Long getPrimaryKey() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessorBenchmark {
+    @Param({"100", "10000", "100000"})
+    public int rows;
+
+    private JdbcConnectionPool source;
+    private Database database;
+    private Connection connection;
+    private PreparedStatement statement;
+    private Object[] params;
+
+    @Setup
+    public void setup() throws SQLException {
+        source = Fixture.source();
+        database = new Database(new Connector.Pool(source, 4), 64);
+        Fixture.fill(database, rows);
+        connection = source.getConnection();
+        statement = connection.prepareStatement("SELECT ?, ?, ?, ?, ?, ?, ?, ?");
+        params = new Object[]{1L, "title", 2, true, new Timestamp(0), Thread.State.NEW, null, 3.5};
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        statement.close();
+        connection.close();
+        database.close();
+        source.dispose();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void bind() throws SQLException {
+        Processor.bind(statement, params);
+    }
+
+    @Benchmark
+    public List<Fixture.Item> list() throws SQLException {
+        return database.query("SELECT * FROM items").list(Fixture.FETCHER);
+    }
+
+    @Benchmark
+    public void foreach(Blackhole blackhole) throws SQLException {
+        database.query("SELECT * FROM items").foreach(Fixture.FETCHER, blackhole::consume);
+    }
+
+    @Benchmark
+    public void stream(Blackhole blackhole) throws SQLException {
+        try (Stream<Fixture.Item> stream = database.query("SELECT * FROM items").stream(Fixture.FETCHER)) {
+            stream.forEach(blackhole::consume);
+        }
+    }
+}
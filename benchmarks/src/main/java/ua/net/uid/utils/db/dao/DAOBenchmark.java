@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db.dao;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.*;
+import ua.net.uid.utils.db.Connector;
+import ua.net.uid.utils.db.Database;
+import ua.net.uid.utils.db.Fetcher;
+import ua.net.uid.utils.db.Fixture;
+import ua.net.uid.utils.db.Outcome;
+import ua.net.uid.utils.db.Session;
+import ua.net.uid.utils.db.query.Condition;
+import ua.net.uid.utils.db.query.QueryBuilder;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DAOBenchmark {
+    static final int ROWS = 10000;
+
+    @Param({"0", "64"})
+    public int statements;
+
+    private JdbcConnectionPool source;
+    private Database database;
+    private ItemDAO dao;
+
+    @Setup
+    public void setup() throws SQLException {
+        source = Fixture.source();
+        database = new Database(new Connector.Pool(source, 4), statements);
+        Fixture.fill(database, ROWS);
+        dao = new ItemDAO(database);
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+        source.dispose();
+    }
+
+    @Benchmark
+    public Fixture.Item get() throws SQLException {
+        return dao.get(ThreadLocalRandom.current().nextLong(1, ROWS + 1));
+    }
+
+    @Benchmark
+    public boolean update() throws SQLException {
+        final Fixture.Item item = dao.get(ThreadLocalRandom.current().nextLong(1, ROWS + 1));
+        item.value = (item.value + 1) % 100;
+        return dao.update(item);
+    }
+
+    static final class ItemDAO extends DAOAbstract<Fixture.Item, Long> {
+        ItemDAO(Session session) {
+            super(session);
+        }
+
+        @Override
+        public String getTableName() {
+            return "items";
+        }
+
+        @Override
+        public Condition getPrimaryCondition(Long key) {
+            return Condition.raw("id = ?", key);
+        }
+
+        @Override
+        public Fetcher<Fixture.Item> getFetcher() {
+            return Fixture.FETCHER;
+        }
+
+        @Override
+        public String[] getPrimaryColumns() {
+            return new String[]{"id"};
+        }
+
+        @Override
+        public String[] getColumns() {
+            return new String[]{"title", "value", "disabled", "modified"};
+        }
+
+        @Override
+        public Object[] getValues(Fixture.Item item) {
+            return new Object[]{item.title, item.value, item.disabled, item.modified};
+        }
+
+        @Override
+        public boolean insert(Fixture.Item item) throws SQLException {
+            if (item.id != null)
+                return getSession().query("INSERT INTO items (id, title, value, disabled, modified) VALUES (?,?,?,?,?)",
+                        item.id, item.title, item.value, item.disabled, item.modified).update() > 0;
+            item.id = getSession().query("INSERT INTO items (title, value, disabled, modified) VALUES (?,?,?,?)",
+                    getValues(item)).update(Outcome.FIRST_LONG);
+            return item.id != null;
+        }
+
+        @Override
+        public boolean update(Fixture.Item item, Long key) throws SQLException {
+            return new QueryBuilder().append("UPDATE ").append(getTableName())
+                    .append(" SET title = ?, value = ?, disabled = ?, modified = ?", getValues(item))
+                    .append(" WHERE ", getPrimaryCondition(key))
+                    .on(getSession()).update() > 0;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db.dao;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.*;
+import ua.net.uid.utils.db.Database;
+import ua.net.uid.utils.db.Fetcher;
+import ua.net.uid.utils.db.Fixture;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+    private static final String QUERY = "SELECT * FROM items";
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    @Param({"handwritten", "reader", "mapper"})
+    public String fetcher;
+
+    private JdbcConnectionPool source;
+    private Database database;
+    private Fetcher<Fixture.Item> selected;
+
+    @Setup
+    public void setup() throws SQLException {
+        source = Fixture.source();
+        database = new Database(source, true);
+        Fixture.fill(database, rows);
+        switch (fetcher) {
+            case "handwritten": selected = Fixture.FETCHER; break;
+            case "reader": selected = Fixture.ROW_FETCHER; break;
+            default: selected = Mapper.of(Fixture.Item.class).getFetcher();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        source.dispose();
+    }
+
+    @Benchmark
+    public List<Fixture.Item> list() throws SQLException {
+        return database.query(QUERY).list(selected);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db.query;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBuilderBenchmark {
+    private final List<Long> ids = new ArrayList<>();
+    private PreparedQuery template;
+
+    @Setup
+    public void setup() {
+        for (long i = 0; i < 32; ++i) ids.add(i);
+        template = new QueryBuilder()
+                .append("SELECT * FROM items")
+                .append(" WHERE ", Condition.and(
+                        Condition.raw("value = ?", Slot.of("value")),
+                        Condition.or(Condition.raw("title LIKE ?", Slot.of("title")), Condition.not("disabled")),
+                        Condition.in("id", ids)
+                ))
+                .append(Order.by().asc("title").desc("id"))
+                .append(" LIMIT ? OFFSET ?", Slot.of("limit"), Slot.of("offset"))
+                .compile();
+    }
+
+    private Condition condition() {
+        return Condition.and(
+                Condition.raw("value = ?", 1),
+                Condition.or(Condition.raw("title LIKE ?", "item%"), Condition.not("disabled")),
+                Condition.in("id", ids)
+        );
+    }
+
+    @Benchmark
+    public void condition(Blackhole blackhole) {
+        Condition condition = condition();
+        blackhole.consume(condition.toString());
+        blackhole.consume(condition.toParams());
+    }
+
+    @Benchmark
+    public void query(Blackhole blackhole) {
+        QueryBuilder builder = new QueryBuilder()
+                .append("SELECT * FROM items")
+                .append(" WHERE ", condition())
+                .append(Order.by().asc("title").desc("id"))
+                .append(" LIMIT ? OFFSET ?", 10, 20);
+        blackhole.consume(builder.getQuery());
+        blackhole.consume(builder.getParams());
+    }
+
+    @Benchmark
+    public void compiled(Blackhole blackhole) {
+        blackhole.consume(template.getQuery());
+        blackhole.consume(template.toParams(1, "item%", 10, 20));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class Async {
+    private static final ThreadLocal<Call<?>> current = new ThreadLocal<>();
+
+    private final Executor executor;
+    private final boolean owned;
+    private final Semaphore permits;
+
+    Async(Executor executor, int permits) {
+        if (permits <= 0)
+            throw new IllegalArgumentException("permits must be positive");
+        this.owned = executor == null;
+        this.executor = owned ? executor(permits) : executor;
+        this.permits = new Semaphore(permits, true);
+    }
+
+    int getPermits() {
+        return permits.availablePermits();
+    }
+
+    <T> CompletableFuture<T> submit(Call<T> call) {
+        try {
+            executor.execute(call);
+        } catch (RejectedExecutionException ex) {
+            call.completeExceptionally(ex);
+        }
+        return call;
+    }
+
+    void shutdown() {
+        if (owned && executor instanceof ExecutorService)
+            ((ExecutorService) executor).shutdown();
+    }
+
+    static Executor executor(int threads) {
+        // virtual threads are available since java 21, the library itself targets java 8
+        try {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+        }
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadFactory factory = task -> {
+            final Thread thread = new Thread(task, "database-async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(threads, factory);
+    }
+
+    // the call being run on this thread, so a processor shared by several calls never mixes up their statements
+    static Call<?> current() {
+        return current.get();
+    }
+
+    static <T> CompletableFuture<T> now(Task<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(task.call());
+        } catch (SQLException | RuntimeException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    interface Task<T> {
+        T call() throws SQLException;
+    }
+
+    final class Call<T> extends CompletableFuture<T> implements Runnable {
+        private final Task<T> task;
+        private Statement statement = null;
+
+        Call(Task<T> task) {
+            this.task = task;
+        }
+
+        synchronized Statement attach(Statement statement) throws SQLException {
+            if (isCancelled())
+                throw new SQLException("query was cancelled");
+            final Statement previous = this.statement;
+            this.statement = statement;
+            return previous;
+        }
+
+        // restores the statement of an enclosing query run by the same task
+        synchronized void detach(Statement previous) {
+            statement = previous;
+        }
+
+        @Override
+        public boolean cancel(boolean interrupt) {
+            final boolean result = super.cancel(interrupt);
+            if (result) {
+                synchronized (this) {
+                    if (statement != null) {
+                        try { statement.cancel(); } catch (final SQLException ignored) {}
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void run() {
+            try {
+                permits.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                completeExceptionally(ex);
+                return;
+            }
+            final Call<?> outer = current.get();
+            current.set(this);
+            try {
+                if (!isDone())
+                    complete(task.call());
+            } catch (SQLException | RuntimeException ex) {
+                completeExceptionally(ex);
+            } finally {
+                current.set(outer);
+                permits.release();
+            }
+        }
+    }
+}
@@ -18,29 +18,111 @@ package ua.net.uid.utils.db;
 import java.io.Closeable;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 public final class Batch implements Closeable {
+    public static final int MAX_PARAMETERS = 32767;
+    private static final int[] EMPTY = new int[0];
+
     private final Session session;
     private final String query;
     private Connection connection = null;
     private PreparedStatement statement = null;
+    private int chunkRows = 0;
+    private long chunkBytes = 0;
+    private boolean commit = false;
+    private boolean managed = false;
+    private Outcome<?> generated = null;
+    private QueryListener listener = null;
+    private ValuesTemplate template = null;
+    private int block = 0;
+    private Object[][] pending = null;
+    private int size = 0;
+    private Map<Integer, PreparedStatement> blocks = null;
+    private int[] results = EMPTY;
+    private int executed = 0;
+    private int rows = 0;
+    private long bytes = 0;
+    private long count = 0;
 
     Batch(Session session, String query) {
         this.session = session;
         this.query = query;
     }
 
+    public Batch chunk(int rows) {
+        return chunk(rows, 0);
+    }
+
+    public Batch chunk(int rows, long bytes) {
+        if (rows < 0 || bytes < 0)
+            throw new IllegalArgumentException("chunk limits must not be negative");
+        this.chunkRows = rows;
+        this.chunkBytes = bytes;
+        return this;
+    }
+
+    public Batch commit(boolean each) {
+        if (connection != null)
+            throw new IllegalStateException("batch already started");
+        this.commit = each;
+        return this;
+    }
+
+    public <K> Batch keys(final Fetcher<K> fetcher, final Processor.Callback<K> callback) {
+        if (connection != null)
+            throw new IllegalStateException("batch already started");
+        this.generated = result -> {
+            while (result.next())
+                callback.call(fetcher.fetch(result));
+            return null;
+        };
+        return this;
+    }
+
+    public Batch rows(int block) {
+        return rows(block, MAX_PARAMETERS);
+    }
+
+    public Batch rows(int block, int maxParameters) {
+        if (connection != null)
+            throw new IllegalStateException("batch already started");
+        if (block <= 0 || maxParameters <= 0)
+            throw new IllegalArgumentException("row block and parameter limit must be positive");
+        template = ValuesTemplate.parse(query);
+        this.block = Math.max(1, Math.min(block, maxParameters / template.getWidth()));
+        this.pending = new Object[this.block][];
+        this.blocks = new HashMap<>();
+        return this;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
     private Connection connection() throws SQLException {
-        if (connection == null)
+        if (connection == null) {
+            listener = session.listener();
+            final long time = listener != null ? System.nanoTime() : 0;
             connection = session.connection();
+            if (listener != null) listener.acquired(System.nanoTime() - time);
+            if (commit && connection.getAutoCommit()) {
+                connection.setAutoCommit(false);
+                managed = true;
+            }
+        }
         return connection;
     }
 
     private PreparedStatement statement() throws SQLException {
         if (statement == null) {
             try {
-                statement = connection().prepareStatement(query);
+                statement = prepare(query);
             } catch (SQLException ex) {
                 close();
                 throw ex;
@@ -49,12 +131,33 @@ public final class Batch implements Closeable {
         return statement;
     }
 
+    private PreparedStatement prepare(String sql) throws SQLException {
+        final Connection conn = connection();
+        final long time = listener != null ? System.nanoTime() : 0;
+        final PreparedStatement result = session.prepare(conn, sql, generated != null);
+        session.options().apply(result);
+        if (listener != null) listener.prepared(query, System.nanoTime() - time);
+        return result;
+    }
+
     public Batch values(Object... params) throws SQLException {
         if (params != null) {
             try {
-                final PreparedStatement stmt = statement();
-                Processor.bind(stmt, params);
-                stmt.addBatch();
+                if (template != null) {
+                    if (params.length != template.getWidth())
+                        throw new SQLException("expected " + template.getWidth() + " parameters, got " + params.length);
+                    connection();
+                    pending[size++] = params;
+                    if (size == block) write(block);
+                } else {
+                    final PreparedStatement stmt = statement();
+                    Processor.bind(stmt, params);
+                    stmt.addBatch();
+                }
+                ++rows;
+                if (chunkBytes > 0) bytes += estimate(params);
+                if ((chunkRows > 0 && rows >= chunkRows) || (chunkBytes > 0 && bytes >= chunkBytes))
+                    flush();
             } catch (SQLException ex) {
                 close();
                 throw ex;
@@ -65,21 +168,150 @@ public final class Batch implements Closeable {
 
     public int[] execute() throws SQLException {
         try {
-            return statement.executeBatch();
+            return flush();
         } finally {
             close();
         }
     }
 
+    public long update() throws SQLException {
+        execute();
+        return count;
+    }
+
+    private int[] flush() throws SQLException {
+        if (rows == 0) return EMPTY;
+        final int[] result = template != null ? flushBlocks() : flushBatch();
+        rows = 0;
+        bytes = 0;
+        if (managed) connection.commit();
+        return result;
+    }
+
+    private int[] flushBlocks() throws SQLException {
+        // the remainder is split into power-of-two blocks so only a few tail statements are ever prepared
+        while (size > 0)
+            write(size >= block ? block : Integer.highestOneBit(size));
+        final int[] result = Arrays.copyOf(results, executed);
+        executed = 0;
+        return result;
+    }
+
+    private void write(int count) throws SQLException {
+        PreparedStatement stmt = blocks.get(count);
+        if (stmt == null) {
+            stmt = prepare(template.render(count));
+            blocks.put(count, stmt);
+        }
+        final int width = template.getWidth();
+        for (int i = 0; i < count; ++i)
+            Processor.bind(stmt, i * width, pending[i]);
+        final int updated;
+        if (listener == null) {
+            updated = stmt.executeUpdate();
+        } else {
+            final long time = System.nanoTime();
+            try {
+                updated = stmt.executeUpdate();
+            } catch (SQLException | RuntimeException ex) {
+                listener.batched(query, count, System.nanoTime() - time, ex);
+                throw ex;
+            }
+            listener.batched(query, count, System.nanoTime() - time, null);
+        }
+        session.written();
+        if (updated > 0) this.count += updated;
+        if (executed == results.length) results = Arrays.copyOf(results, Math.max(8, executed * 2));
+        results[executed++] = updated;
+        if (generated != null) {
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                generated.process(keys);
+            }
+        }
+        size -= count;
+        System.arraycopy(pending, count, pending, 0, size);
+        Arrays.fill(pending, size, size + count, null);
+    }
+
+    private int[] flushBatch() throws SQLException {
+        final int[] result;
+        if (listener == null) {
+            result = statement.executeBatch();
+        } else {
+            final long time = System.nanoTime();
+            try {
+                result = statement.executeBatch();
+            } catch (SQLException | RuntimeException ex) {
+                listener.batched(query, rows, System.nanoTime() - time, ex);
+                throw ex;
+            }
+            listener.batched(query, rows, System.nanoTime() - time, null);
+        }
+        session.written();
+        for (int value : result) {
+            if (value > 0) {
+                count += value;
+            } else if (value == Statement.SUCCESS_NO_INFO) {
+                ++count;
+            }
+        }
+        if (generated != null) {
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                generated.process(keys);
+            }
+        }
+        return result;
+    }
+
     @Override
     public void close() {
         if (statement != null) {
-            try { statement.close(); } catch (final SQLException ignored) {}
+            try {
+                if (rows > 0) statement.clearBatch();
+                session.options().reset(statement);
+                session.recycle(connection, query, generated != null, statement);
+            } catch (final SQLException ex) {
+                try { statement.close(); } catch (final SQLException ignored) {}
+            }
         }
         statement = null;
+        if (blocks != null) {
+            for (Map.Entry<Integer, PreparedStatement> entry : blocks.entrySet()) {
+                session.options().reset(entry.getValue());
+                session.recycle(connection, template.render(entry.getKey()), generated != null, entry.getValue());
+            }
+            blocks.clear();
+            Arrays.fill(pending, 0, size, null);
+            size = 0;
+            executed = 0;
+        }
+        rows = 0;
+        bytes = 0;
         if (connection != null) {
+            if (managed) {
+                try {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                } catch (final SQLException ignored) {
+                }
+                managed = false;
+            }
             session.release(connection);
             connection = null;
         }
     }
+
+    private static long estimate(Object[] params) {
+        long size = 0;
+        for (Object param : params) {
+            if (param instanceof CharSequence) {
+                size += ((CharSequence) param).length() * 2L;
+            } else if (param instanceof byte[]) {
+                size += ((byte[]) param).length;
+            } else {
+                size += 8;
+            }
+        }
+        return size;
+    }
 }
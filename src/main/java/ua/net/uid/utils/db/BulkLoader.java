@@ -0,0 +1,332 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public final class BulkLoader<T> {
+    private static final Object[][] END = new Object[0][];
+    private static final Object[][] ABORT = new Object[0][];
+    private static final int COPY_BUFFER = 1 << 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Session session;
+    private final String table;
+    private final String[] columns;
+    private final Binder<? super T> binder;
+    private int chunk = 1000;
+    private int block = 100;
+    private int depth = 2;
+    private boolean commit = false;
+    private boolean copy = true;
+    private Progress progress = null;
+    private volatile long rows = 0;
+    private volatile long nanos = 0;
+    private volatile boolean copied = false;
+
+    BulkLoader(Session session, String table, String[] columns, Binder<? super T> binder) {
+        if (columns.length == 0)
+            throw new IllegalArgumentException("columns must not be empty");
+        this.session = session;
+        this.table = table;
+        this.columns = columns;
+        this.binder = binder;
+    }
+
+    public BulkLoader<T> chunk(int rows) {
+        if (rows <= 0)
+            throw new IllegalArgumentException("chunk size must be positive");
+        this.chunk = rows;
+        return this;
+    }
+
+    public BulkLoader<T> rows(int block) {
+        if (block <= 0)
+            throw new IllegalArgumentException("row block must be positive");
+        this.block = block;
+        return this;
+    }
+
+    public BulkLoader<T> depth(int chunks) {
+        if (chunks <= 0)
+            throw new IllegalArgumentException("queue depth must be positive");
+        this.depth = chunks;
+        return this;
+    }
+
+    public BulkLoader<T> commit(boolean each) {
+        this.commit = each;
+        return this;
+    }
+
+    public BulkLoader<T> copy(boolean allowed) {
+        this.copy = allowed;
+        return this;
+    }
+
+    public BulkLoader<T> progress(Progress progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public double getThroughput() {
+        final long elapsed = nanos;
+        return elapsed > 0 ? rows * 1e9 / elapsed : 0;
+    }
+
+    public boolean isCopied() {
+        return copied;
+    }
+
+    public long load(Iterable<? extends T> items) throws SQLException {
+        return load(items.iterator());
+    }
+
+    public long load(Stream<? extends T> items) throws SQLException {
+        return load(items.iterator());
+    }
+
+    private long load(Iterator<? extends T> items) throws SQLException {
+        rows = 0;
+        nanos = 0;
+        copied = false;
+        final long start = System.nanoTime();
+        if (copy && session.getDialect() == Dialect.POSTGRESQL) {
+            final long result = copy(items, start);
+            if (result >= 0) {
+                session.written();
+                return result;
+            }
+        }
+        return pipeline(items, start);
+    }
+
+    private void report(long count, long start) {
+        rows = count;
+        nanos = System.nanoTime() - start;
+        if (progress != null) progress.report(count, nanos);
+    }
+
+    // the postgresql driver is optional, so its copy api is reached reflectively
+    private long copy(Iterator<? extends T> items, long start) throws SQLException {
+        Connection connection = null;
+        try {
+            connection = session.connection();
+            final Class<?> type;
+            try {
+                type = Class.forName("org.postgresql.PGConnection", false, connection.getClass().getClassLoader());
+            } catch (ClassNotFoundException ex) {
+                return -1;
+            }
+            if (!connection.isWrapperFor(type)) return -1;
+            final Object manager = type.getMethod("getCopyAPI").invoke(connection.unwrap(type));
+            final Class<?> operation = Class.forName("org.postgresql.copy.CopyIn", false, type.getClassLoader());
+            final Method write = operation.getMethod("writeToCopy", byte[].class, int.class, int.class);
+            final String sql = statement("COPY ").append(") FROM STDIN WITH (FORMAT csv)").toString();
+            final Object in = manager.getClass().getMethod("copyIn", String.class).invoke(manager, sql);
+            copied = true;
+            try {
+                final StringBuilder buffer = new StringBuilder(COPY_BUFFER + 1024);
+                long count = 0;
+                while (items.hasNext()) {
+                    csv(buffer, binder.bind(items.next()));
+                    if (++count % chunk == 0 || buffer.length() >= COPY_BUFFER) {
+                        final byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+                        write.invoke(in, bytes, 0, bytes.length);
+                        buffer.setLength(0);
+                        if (count % chunk == 0) report(count, start);
+                    }
+                }
+                if (buffer.length() > 0) {
+                    final byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+                    write.invoke(in, bytes, 0, bytes.length);
+                }
+                final long result = (Long) operation.getMethod("endCopy").invoke(in);
+                report(result, start);
+                return result;
+            } catch (SQLException | RuntimeException | ReflectiveOperationException ex) {
+                try { operation.getMethod("cancelCopy").invoke(in); } catch (final ReflectiveOperationException ignored) {}
+                throw ex;
+            }
+        } catch (InvocationTargetException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            throw new SQLException("copy failed", cause);
+        } catch (ReflectiveOperationException ex) {
+            if (copied) throw new SQLException("copy failed", ex);
+            return -1;
+        } finally {
+            session.release(connection);
+        }
+    }
+
+    private StringBuilder statement(String command) {
+        final StringBuilder builder = new StringBuilder(command).append(table).append(" (");
+        for (int i = 0; i < columns.length; ++i) {
+            if (i > 0) builder.append(", ");
+            builder.append(columns[i]);
+        }
+        return builder;
+    }
+
+    static void csv(StringBuilder builder, Object[] row) {
+        for (int i = 0; i < row.length; ++i) {
+            if (i > 0) builder.append(',');
+            final Object value = row[i];
+            // an unquoted empty field is null, a quoted one is an empty string
+            if (value instanceof byte[]) {
+                // bytea hex input, the same bytes the batch path would bind
+                builder.append("\"\\x");
+                for (byte b : (byte[]) value)
+                    builder.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+                builder.append('"');
+            } else if (value != null) {
+                final String text = value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+                builder.append('"');
+                for (int j = 0; j < text.length(); ++j) {
+                    final char c = text.charAt(j);
+                    if (c == '"') builder.append('"');
+                    builder.append(c);
+                }
+                builder.append('"');
+            }
+        }
+        builder.append('\n');
+    }
+
+    private long pipeline(Iterator<? extends T> items, long start) throws SQLException {
+        final BlockingQueue<Object[][]> queue = new ArrayBlockingQueue<>(depth);
+        final Async.Task<Long> consumer = () -> consume(queue, start);
+        final Async async = session.async();
+        final CompletableFuture<Long> future = async != null ? async.submit(async.new Call<>(consumer)) : start(consumer);
+        try {
+            Object[][] pending = new Object[chunk][];
+            int size = 0;
+            while (items.hasNext() && !future.isDone()) {
+                pending[size++] = binder.bind(items.next());
+                if (size == chunk) {
+                    put(queue, future, pending);
+                    pending = new Object[chunk][];
+                    size = 0;
+                }
+            }
+            if (size > 0) put(queue, future, Arrays.copyOf(pending, size));
+            put(queue, future, END);
+        } catch (SQLException | RuntimeException ex) {
+            queue.clear();
+            queue.offer(ABORT);
+            try {
+                future.get();
+            } catch (ExecutionException | InterruptedException ignored) {
+            }
+            throw ex;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new SQLException("bulk load interrupted", ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new SQLException("bulk load failed", cause);
+        }
+    }
+
+    private static void put(BlockingQueue<Object[][]> queue, CompletableFuture<Long> future, Object[][] rows) throws SQLException {
+        try {
+            while (!queue.offer(rows, 10, TimeUnit.MILLISECONDS))
+                if (future.isDone()) return;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("bulk load interrupted", ex);
+        }
+    }
+
+    private long consume(BlockingQueue<Object[][]> queue, long start) throws SQLException {
+        final StringBuilder builder = statement("INSERT INTO ").append(") VALUES (");
+        for (int i = 0; i < columns.length; ++i)
+            builder.append(i == 0 ? "?" : ", ?");
+        final Batch batch = session.batch(builder.append(')').toString()).chunk(chunk).commit(commit);
+        if (block > 1) batch.rows(block);
+        try {
+            for (;;) {
+                final Object[][] pending = queue.take();
+                if (pending == END) {
+                    final long result = batch.update();
+                    report(result, start);
+                    return result;
+                }
+                if (pending == ABORT)
+                    throw new SQLException("bulk load aborted");
+                for (Object[] row : pending)
+                    batch.values(row);
+                report(batch.getCount(), start);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("bulk load interrupted", ex);
+        } finally {
+            batch.close();
+        }
+    }
+
+    private static <R> CompletableFuture<R> start(Async.Task<R> task) {
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        final Thread thread = new Thread(() -> {
+            try {
+                future.complete(task.call());
+            } catch (SQLException | RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        }, "database-loader");
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    @FunctionalInterface
+    public interface Binder<T> {
+        Object[] bind(T item) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface Progress {
+        void report(long rows, long nanos);
+    }
+}
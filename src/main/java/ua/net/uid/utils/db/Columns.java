@@ -0,0 +1,269 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class Columns {
+    private static final int CHUNK = 1024;
+
+    public enum Type {LONG, DOUBLE, BOOLEAN, STRING, OBJECT}
+
+    private final Column[] columns;
+    private final int size;
+
+    private Columns(Column[] columns, int size) {
+        this.columns = columns;
+        this.size = size;
+    }
+
+    static Columns read(ResultSet result) throws SQLException {
+        final ResultSetMetaData meta = result.getMetaData();
+        final Column[] columns = new Column[meta.getColumnCount()];
+        for (int i = 0; i < columns.length; ++i)
+            columns[i] = Column.of(meta.getColumnLabel(i + 1), meta.getColumnType(i + 1));
+        int size = 0;
+        int capacity = 0;
+        while (result.next()) {
+            if (size == capacity) {
+                capacity = capacity + Math.max(CHUNK, capacity >> 1);
+                for (Column column : columns)
+                    column.grow(capacity);
+            }
+            for (int i = 0; i < columns.length; ++i)
+                columns[i].read(result, i + 1, size);
+            ++size;
+        }
+        for (Column column : columns)
+            column.trim(size);
+        return new Columns(columns, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public String getLabel(int column) {
+        return column(column).label;
+    }
+
+    public Type getType(int column) {
+        return column(column).type;
+    }
+
+    public int indexOf(String label) {
+        for (int i = 0; i < columns.length; ++i)
+            if (columns[i].label.equalsIgnoreCase(label)) return i + 1;
+        return 0;
+    }
+
+    public boolean isNull(int column, int row) {
+        checkRow(row);
+        final long[] nulls = column(column).nulls;
+        return (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    public long getLong(int column, int row) {
+        checkRow(row);
+        final Column value = column(column);
+        switch (value.type) {
+            case LONG: return value.longs[row];
+            case DOUBLE: return (long) value.doubles[row];
+            case BOOLEAN: return value.booleans[row] ? 1 : 0;
+            default: throw new IllegalStateException("column " + value.label + " is not numeric");
+        }
+    }
+
+    public double getDouble(int column, int row) {
+        checkRow(row);
+        final Column value = column(column);
+        switch (value.type) {
+            case LONG: return value.longs[row];
+            case DOUBLE: return value.doubles[row];
+            case BOOLEAN: return value.booleans[row] ? 1 : 0;
+            default: throw new IllegalStateException("column " + value.label + " is not numeric");
+        }
+    }
+
+    public boolean getBoolean(int column, int row) {
+        return getLong(column, row) != 0;
+    }
+
+    public String getString(int column, int row) {
+        final Object value = getObject(column, row);
+        return value == null ? null : value.toString();
+    }
+
+    public Object getObject(int column, int row) {
+        if (isNull(column, row)) return null;
+        final Column value = column(column);
+        switch (value.type) {
+            case LONG: return value.longs[row];
+            case DOUBLE: return value.doubles[row];
+            case BOOLEAN: return value.booleans[row];
+            case STRING: return value.dictionary[value.codes[row]];
+            default: return value.objects[row];
+        }
+    }
+
+    public long[] longs(int column) {
+        return typed(column, Type.LONG).longs;
+    }
+
+    public double[] doubles(int column) {
+        return typed(column, Type.DOUBLE).doubles;
+    }
+
+    public boolean[] booleans(int column) {
+        return typed(column, Type.BOOLEAN).booleans;
+    }
+
+    public int[] codes(int column) {
+        return typed(column, Type.STRING).codes;
+    }
+
+    public String[] dictionary(int column) {
+        return typed(column, Type.STRING).dictionary;
+    }
+
+    private Column column(int column) {
+        if (column < 1 || column > columns.length)
+            throw new IndexOutOfBoundsException("column " + column + " of " + columns.length);
+        return columns[column - 1];
+    }
+
+    private Column typed(int column, Type type) {
+        final Column result = column(column);
+        if (result.type != type)
+            throw new IllegalStateException("column " + result.label + " is " + result.type + ", not " + type);
+        return result;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size)
+            throw new IndexOutOfBoundsException("row " + row + " of " + size);
+    }
+
+    private static final class Column {
+        private final String label;
+        private final Type type;
+        private long[] nulls = new long[0];
+        private long[] longs;
+        private double[] doubles;
+        private boolean[] booleans;
+        private int[] codes;
+        private String[] dictionary;
+        private HashMap<String, Integer> lookup;
+        private Object[] objects;
+
+        private Column(String label, Type type) {
+            this.label = label;
+            this.type = type;
+            if (type == Type.STRING) lookup = new HashMap<>();
+        }
+
+        static Column of(String label, int sqlType) {
+            switch (sqlType) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                    return new Column(label, Type.LONG);
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    return new Column(label, Type.DOUBLE);
+                case Types.BIT:
+                case Types.BOOLEAN:
+                    return new Column(label, Type.BOOLEAN);
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.LONGVARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                case Types.LONGNVARCHAR:
+                    return new Column(label, Type.STRING);
+                default:
+                    return new Column(label, Type.OBJECT);
+            }
+        }
+
+        void grow(int capacity) {
+            nulls = Arrays.copyOf(nulls, (capacity + 63) >>> 6);
+            switch (type) {
+                case LONG: longs = longs == null ? new long[capacity] : Arrays.copyOf(longs, capacity); break;
+                case DOUBLE: doubles = doubles == null ? new double[capacity] : Arrays.copyOf(doubles, capacity); break;
+                case BOOLEAN: booleans = booleans == null ? new boolean[capacity] : Arrays.copyOf(booleans, capacity); break;
+                case STRING: codes = codes == null ? new int[capacity] : Arrays.copyOf(codes, capacity); break;
+                default: objects = objects == null ? new Object[capacity] : Arrays.copyOf(objects, capacity);
+            }
+        }
+
+        void read(ResultSet result, int index, int row) throws SQLException {
+            final boolean isNull;
+            switch (type) {
+                case LONG:
+                    longs[row] = result.getLong(index);
+                    isNull = result.wasNull();
+                    break;
+                case DOUBLE:
+                    doubles[row] = result.getDouble(index);
+                    isNull = result.wasNull();
+                    break;
+                case BOOLEAN:
+                    booleans[row] = result.getBoolean(index);
+                    isNull = result.wasNull();
+                    break;
+                case STRING:
+                    final String value = result.getString(index);
+                    isNull = value == null;
+                    codes[row] = isNull ? -1 : lookup.computeIfAbsent(value, key -> lookup.size());
+                    break;
+                default:
+                    objects[row] = result.getObject(index);
+                    isNull = objects[row] == null;
+            }
+            if (isNull) nulls[row >>> 6] |= 1L << row;
+        }
+
+        void trim(int size) {
+            nulls = Arrays.copyOf(nulls, (size + 63) >>> 6);
+            switch (type) {
+                case LONG: longs = longs == null ? new long[0] : Arrays.copyOf(longs, size); break;
+                case DOUBLE: doubles = doubles == null ? new double[0] : Arrays.copyOf(doubles, size); break;
+                case BOOLEAN: booleans = booleans == null ? new boolean[0] : Arrays.copyOf(booleans, size); break;
+                case STRING:
+                    codes = codes == null ? new int[0] : Arrays.copyOf(codes, size);
+                    dictionary = new String[lookup.size()];
+                    for (Map.Entry<String, Integer> entry : lookup.entrySet())
+                        dictionary[entry.getValue()] = entry.getKey();
+                    lookup = null;
+                    break;
+                default: objects = objects == null ? new Object[0] : Arrays.copyOf(objects, size);
+            }
+        }
+    }
+}
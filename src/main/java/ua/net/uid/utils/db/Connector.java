@@ -18,15 +18,73 @@ package ua.net.uid.utils.db;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
 
 public interface Connector {
     Connection get() throws SQLException;
 
+    default Connection read() throws SQLException {
+        return get();
+    }
+
     void release(Connection connection);
 
     void close();
 
-    final class Pooled implements Connector {
+    default int capacity() {
+        return 0;
+    }
+
+    default boolean isShared() {
+        return false;
+    }
+
+    // reported by the session once a write went through, so routing can keep the thread on the primary
+    default void written() {
+    }
+
+    default void addListener(Listener listener) {
+    }
+
+    default void removeListener(Listener listener) {
+    }
+
+    interface Listener {
+        void closed(Connection connection);
+    }
+
+    abstract class Base implements Connector {
+        private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void addListener(Listener listener) {
+            if (listener != null)
+                listeners.add(listener);
+        }
+
+        @Override
+        public void removeListener(Listener listener) {
+            listeners.remove(listener);
+        }
+
+        protected void close(Connection connection) {
+            if (connection != null) {
+                for (Listener listener : listeners)
+                    listener.closed(connection);
+                try { connection.close(); } catch (final SQLException ignored) {}
+            }
+        }
+    }
+
+    final class Pooled extends Base {
         private final DataSource source;
 
         public Pooled(DataSource source) {
@@ -40,9 +98,7 @@ public interface Connector {
 
         @Override
         public void release(Connection connection) {
-            if (connection != null) {
-                try { connection.close(); } catch (final SQLException ignored) {}
-            }
+            close(connection);
         }
 
         @Override
@@ -50,7 +106,7 @@ public interface Connector {
         }
     }
 
-    final class Source implements Connector {
+    final class Source extends Base {
         private final DataSource source;
         private Connection connection = null;
 
@@ -59,9 +115,11 @@ public interface Connector {
         }
 
         @Override
-        public Connection get() throws SQLException {
-            if (connection == null || connection.isClosed())
+        public synchronized Connection get() throws SQLException {
+            if (connection == null || connection.isClosed()) {
+                close(connection);
                 connection = source.getConnection();
+            }
             return connection;
         }
 
@@ -70,15 +128,23 @@ public interface Connector {
         }
 
         @Override
-        public void close() {
-            if (connection != null) {
-                try { connection.close(); } catch (final SQLException ignored) {}
-                connection = null;
-            }
+        public int capacity() {
+            return 1;
+        }
+
+        @Override
+        public boolean isShared() {
+            return true;
+        }
+
+        @Override
+        public synchronized void close() {
+            close(connection);
+            connection = null;
         }
     }
 
-    final class Static implements Connector {
+    final class Static extends Base {
         private final Connection connection;
 
         public Static(Connection connection) {
@@ -94,10 +160,418 @@ public interface Connector {
         public void release(Connection connection) {
         }
 
+        @Override
+        public int capacity() {
+            return 1;
+        }
+
+        @Override
+        public boolean isShared() {
+            return true;
+        }
+
         @Override
         public void close() {
-            if (connection != null) {
-                try { connection.close(); } catch (final SQLException ignored) {}
+            close(connection);
+        }
+    }
+
+    final class Pool extends Base {
+        private static final int VALIDATION_TIMEOUT = 5;
+
+        private final DataSource source;
+        private final int minSize;
+        private final int maxSize;
+        private final Semaphore permits;
+        private final ConcurrentLinkedDeque<Entry> idle = new ConcurrentLinkedDeque<>();
+        private final ConcurrentHashMap<Connection, Entry> entries = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private volatile long timeout = TimeUnit.SECONDS.toNanos(30);
+        private volatile long validation = TimeUnit.SECONDS.toNanos(5);
+        private volatile long expiration = TimeUnit.MINUTES.toNanos(10);
+        private volatile boolean closed = false;
+
+        public Pool(DataSource source, int minSize, int maxSize) {
+            if (minSize < 0 || maxSize <= 0 || minSize > maxSize)
+                throw new IllegalArgumentException("invalid pool size: " + minSize + ".." + maxSize);
+            this.source = source;
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            this.permits = new Semaphore(maxSize, true);
+        }
+
+        public Pool(DataSource source, int maxSize) {
+            this(source, 0, maxSize);
+        }
+
+        public Pool timeout(long millis) {
+            timeout = TimeUnit.MILLISECONDS.toNanos(millis);
+            return this;
+        }
+
+        public Pool validation(long millis) {
+            validation = millis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(millis);
+            return this;
+        }
+
+        public Pool expiration(long millis) {
+            expiration = millis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(millis);
+            return this;
+        }
+
+        public Pool fill() throws SQLException {
+            while (size.get() < minSize && !closed) {
+                if (size.incrementAndGet() > minSize) {
+                    size.decrementAndGet();
+                    break;
+                }
+                final Connection connection;
+                try {
+                    connection = source.getConnection();
+                } catch (SQLException | RuntimeException ex) {
+                    size.decrementAndGet();
+                    throw ex;
+                }
+                final Entry entry = new Entry(connection);
+                entries.put(connection, entry);
+                idle.offerLast(entry);
+            }
+            return this;
+        }
+
+        public int getMinSize() {
+            return minSize;
+        }
+
+        @Override
+        public int capacity() {
+            return maxSize;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public int getSize() {
+            return size.get();
+        }
+
+        public int getActive() {
+            return maxSize - permits.availablePermits();
+        }
+
+        @Override
+        public Connection get() throws SQLException {
+            if (closed)
+                throw new SQLException("connection pool is closed");
+            try {
+                if (!permits.tryAcquire(timeout, TimeUnit.NANOSECONDS))
+                    throw new SQLTransientConnectionException("connection pool timeout, size " + maxSize);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException("interrupted while waiting for connection", ex);
+            }
+            try {
+                Entry entry;
+                while ((entry = idle.pollFirst()) != null) {
+                    if (validation >= 0 && System.nanoTime() - entry.released > validation && !valid(entry.connection)) {
+                        discard(entry);
+                    } else {
+                        return entry.connection;
+                    }
+                }
+                size.incrementAndGet();
+                final Connection connection;
+                try {
+                    connection = source.getConnection();
+                } catch (SQLException | RuntimeException ex) {
+                    size.decrementAndGet();
+                    throw ex;
+                }
+                entries.put(connection, new Entry(connection));
+                return connection;
+            } catch (SQLException | RuntimeException ex) {
+                permits.release();
+                throw ex;
+            }
+        }
+
+        @Override
+        public void release(Connection connection) {
+            if (connection == null) return;
+            final Entry entry = entries.get(connection);
+            if (entry == null) {
+                close(connection);
+                return;
+            }
+            try {
+                if (closed || !reset(connection)) {
+                    discard(entry);
+                } else {
+                    entry.released = System.nanoTime();
+                    idle.offerFirst(entry);
+                }
+            } finally {
+                permits.release();
+            }
+            evict();
+            if (closed) clear();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            clear();
+        }
+
+        private void clear() {
+            Entry entry;
+            while ((entry = idle.pollFirst()) != null)
+                discard(entry);
+        }
+
+        private void evict() {
+            if (expiration < 0) return;
+            final long deadline = System.nanoTime() - expiration;
+            Entry entry;
+            while (size.get() > minSize && (entry = idle.peekLast()) != null && entry.released - deadline < 0) {
+                if (idle.removeLastOccurrence(entry))
+                    discard(entry);
+            }
+        }
+
+        private void discard(Entry entry) {
+            if (entries.remove(entry.connection) != null)
+                size.decrementAndGet();
+            close(entry.connection);
+        }
+
+        private static boolean valid(Connection connection) {
+            try {
+                return connection.isValid(VALIDATION_TIMEOUT);
+            } catch (SQLException ex) {
+                return false;
+            }
+        }
+
+        private static boolean reset(Connection connection) {
+            try {
+                if (connection.isClosed()) return false;
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                return true;
+            } catch (SQLException ex) {
+                return false;
+            }
+        }
+
+        private static final class Entry {
+            private final Connection connection;
+            private volatile long released;
+
+            Entry(Connection connection) {
+                this.connection = connection;
+                this.released = System.nanoTime();
+            }
+        }
+    }
+
+    final class Routing implements Connector {
+        public enum Balance {LEAST_OUTSTANDING, LATENCY_WEIGHTED}
+
+        private final Connector primary;
+        private final Replica[] replicas;
+        private final ConcurrentHashMap<Connection, Borrow> borrowed = new ConcurrentHashMap<>();
+        private final ThreadLocal<long[]> written = ThreadLocal.withInitial(() -> new long[1]);
+        private final AtomicInteger next = new AtomicInteger();
+        private volatile Balance balance = Balance.LEAST_OUTSTANDING;
+        private volatile long stickiness = 0;
+        private LongSupplier clock = System::nanoTime;
+
+        public Routing(Connector primary, Connector... replicas) {
+            if (primary == null)
+                throw new IllegalArgumentException("primary connector is null");
+            this.primary = primary;
+            this.replicas = new Replica[replicas == null ? 0 : replicas.length];
+            for (int i = 0; i < this.replicas.length; ++i)
+                this.replicas[i] = new Replica(replicas[i]);
+        }
+
+        public Routing balance(Balance balance) {
+            this.balance = balance;
+            return this;
+        }
+
+        public Routing stickiness(long millis) {
+            stickiness = millis > 0 ? TimeUnit.MILLISECONDS.toNanos(millis) : 0;
+            return this;
+        }
+
+        public Connector getPrimary() {
+            return primary;
+        }
+
+        public int getReplicaCount() {
+            return replicas.length;
+        }
+
+        public int getOutstanding(int replica) {
+            return replicas[replica].outstanding.get();
+        }
+
+        public double getLatency(int replica, TimeUnit unit) {
+            return replicas[replica].latency / unit.toNanos(1);
+        }
+
+        // also serves pinned reads such as blocks, so acquiring alone does not start the stickiness window
+        @Override
+        public Connection get() throws SQLException {
+            return primary.get();
+        }
+
+        @Override
+        public Connection read() throws SQLException {
+            if (replicas.length == 0 || sticky())
+                return primary.get();
+            final Replica replica = choose();
+            replica.outstanding.incrementAndGet();
+            final Connection connection;
+            try {
+                connection = replica.connector.get();
+            } catch (SQLException | RuntimeException ex) {
+                replica.outstanding.decrementAndGet();
+                return primary.get();
+            }
+            borrowed.compute(connection, (key, borrow) -> borrow == null ? new Borrow(replica) : borrow.retain());
+            return connection;
+        }
+
+        @Override
+        public void release(Connection connection) {
+            if (connection == null) return;
+            final Borrow[] released = new Borrow[1];
+            borrowed.computeIfPresent(connection, (key, borrow) -> {
+                released[0] = borrow;
+                return --borrow.count > 0 ? borrow : null;
+            });
+            final Borrow borrow = released[0];
+            if (borrow == null) {
+                primary.release(connection);
+            } else {
+                borrow.replica.outstanding.decrementAndGet();
+                borrow.replica.record(System.nanoTime() - borrow.start);
+                borrow.replica.connector.release(connection);
+            }
+        }
+
+        @Override
+        public int capacity() {
+            int result = primary.capacity();
+            for (Replica replica : replicas) {
+                final int capacity = replica.connector.capacity();
+                if (result <= 0 || capacity <= 0) return 0;
+                result += capacity;
+            }
+            return result;
+        }
+
+        @Override
+        public boolean isShared() {
+            if (primary.isShared()) return true;
+            for (Replica replica : replicas)
+                if (replica.connector.isShared()) return true;
+            return false;
+        }
+
+        @Override
+        public void close() {
+            primary.close();
+            for (Replica replica : replicas)
+                replica.connector.close();
+        }
+
+        @Override
+        public void addListener(Listener listener) {
+            primary.addListener(listener);
+            for (Replica replica : replicas)
+                replica.connector.addListener(listener);
+        }
+
+        @Override
+        public void removeListener(Listener listener) {
+            primary.removeListener(listener);
+            for (Replica replica : replicas)
+                replica.connector.removeListener(listener);
+        }
+
+        @Override
+        public void written() {
+            if (stickiness > 0)
+                written.get()[0] = clock.getAsLong();
+        }
+
+        Routing clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        private boolean sticky() {
+            if (stickiness <= 0) return false;
+            final long last = written.get()[0];
+            return last != 0 && clock.getAsLong() - last < stickiness;
+        }
+
+        private Replica choose() {
+            // start from a rotating offset so that ties are spread instead of always hitting the first replica
+            final int offset = Math.floorMod(next.getAndIncrement(), replicas.length);
+            final boolean weighted = balance == Balance.LATENCY_WEIGHTED;
+            Replica best = null;
+            double score = Double.MAX_VALUE;
+            for (int i = 0; i < replicas.length; ++i) {
+                final Replica replica = replicas[(offset + i) % replicas.length];
+                final int outstanding = replica.outstanding.get();
+                final double current = weighted ? (outstanding + 1) * Math.max(replica.latency, 1) : outstanding;
+                if (current < score) {
+                    best = replica;
+                    score = current;
+                }
+            }
+            return best;
+        }
+
+        private static final class Replica {
+            private static final double DECAY = 0.2;
+
+            private final Connector connector;
+            private final AtomicInteger outstanding = new AtomicInteger();
+            private volatile double latency = 0;
+
+            Replica(Connector connector) {
+                if (connector == null)
+                    throw new IllegalArgumentException("replica connector is null");
+                this.connector = connector;
+            }
+
+            void record(long nanos) {
+                final double current = latency;
+                latency = current == 0 ? nanos : current + DECAY * (nanos - current);
+            }
+        }
+
+        private static final class Borrow {
+            private final Replica replica;
+            private final long start = System.nanoTime();
+            private int count = 1;
+
+            Borrow(Replica replica) {
+                this.replica = replica;
+            }
+
+            Borrow retain() {
+                ++count;
+                return this;
             }
         }
     }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public final class Cursor<T> implements Iterator<T>, AutoCloseable {
+    private final ResultSet result;
+    private final Fetcher<T> fetcher;
+    private final LongConsumer finisher;
+    private boolean fetched = false;
+    private boolean available = false;
+    private boolean closed = false;
+    private long rows = 0;
+
+    Cursor(ResultSet result, Fetcher<T> fetcher, LongConsumer finisher) {
+        this.result = result;
+        this.fetcher = fetcher;
+        this.finisher = finisher;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!fetched && !closed) {
+            try {
+                available = result.next();
+            } catch (SQLException ex) {
+                close();
+                throw new UncheckedSQLException(ex);
+            }
+            fetched = true;
+            if (!available) close();
+        }
+        return available;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        fetched = false;
+        ++rows;
+        try {
+            return fetcher.fetch(result);
+        } catch (SQLException ex) {
+            close();
+            throw new UncheckedSQLException(ex);
+        }
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            available = false;
+            try { result.close(); } catch (final SQLException ignored) {}
+            finisher.accept(rows);
+        }
+    }
+}
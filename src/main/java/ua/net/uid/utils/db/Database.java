@@ -19,12 +19,29 @@ import javax.sql.ConnectionPoolDataSource;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public final class Database extends Session {
     private final Connector connector;
+    private final StatementCache statements;
+    private Executor executor = null;
+    private volatile Async async = null;
+    private volatile QueryListener listener = null;
 
     public Database(Connector connector) {
+        this(connector, 0);
+    }
+
+    public Database(Connector connector, int statements) {
         this.connector = connector;
+        if (statements > 0) {
+            this.statements = new StatementCache(statements);
+            connector.addListener(this.statements);
+        } else {
+            this.statements = null;
+        }
     }
 
     public Database(DataSource source, boolean pooled) {
@@ -39,30 +56,147 @@ public final class Database extends Session {
         this(new Connector.Static(connection));
     }
 
+    public synchronized Database executor(Executor executor) {
+        if (async != null)
+            throw new IllegalStateException("asynchronous executor already started");
+        this.executor = executor;
+        return this;
+    }
+
+    public Database listener(QueryListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public QueryListener getListener() {
+        return listener;
+    }
+
+    public <T> CompletableFuture<T> selectAsync(String query, Outcome<T> outcome, Object... params) {
+        return query(query, params).selectAsync(outcome);
+    }
+
+    public <T> CompletableFuture<T> scalarAsync(String query, Fetcher<T> fetcher, Object... params) {
+        return query(query, params).scalarAsync(fetcher);
+    }
+
+    public <T> CompletableFuture<List<T>> listAsync(String query, Fetcher<T> fetcher, Object... params) {
+        return query(query, params).listAsync(fetcher);
+    }
+
+    public CompletableFuture<Integer> updateAsync(String query, Object... params) {
+        return query(query, params).updateAsync();
+    }
+
+    public StatementCache getStatementCache() {
+        return statements;
+    }
+
+    @Override
+    StatementCache statements() {
+        return statements;
+    }
+
+    @Override
+    QueryListener listener() {
+        return listener;
+    }
+
+    @Override
+    Async async() {
+        Async result = async;
+        if (result == null) {
+            synchronized (this) {
+                if ((result = async) == null) {
+                    final int capacity = connector.capacity();
+                    async = result = new Async(executor, capacity > 0 ? capacity : Runtime.getRuntime().availableProcessors() * 2);
+                }
+            }
+        }
+        return result;
+    }
+
     @Override
     protected Connection connection() throws SQLException {
         return connector.get();
     }
 
+    @Override
+    protected Connection reader() throws SQLException {
+        return connector.read();
+    }
+
     @Override
     protected void release(Connection connection) {
         connector.release(connection);
     }
 
+    @Override
+    boolean dedicated() {
+        return !connector.isShared();
+    }
+
+    @Override
+    void written() {
+        connector.written();
+    }
+
+    public void close() {
+        final Async current = async;
+        if (current != null)
+            current.shutdown();
+        connector.close();
+        if (statements != null)
+            statements.clear();
+    }
+
     public void transaction(Solid tx) throws SQLException {
+        attempt(tx, -1);
+    }
+
+    public void transaction(Retry retry, Solid tx) throws SQLException {
+        retry.execute(this, tx);
+    }
+
+    void attempt(Solid tx, int isolation) throws SQLException {
+        final QueryListener listener = this.listener;
+        final long time = listener != null ? System.nanoTime() : 0;
+        boolean committed = false;
+        int previous = -1;
         Connection connection = null;
         try {
             connection = connection();
+            if (isolation >= 0) {
+                previous = connection.getTransactionIsolation();
+                if (previous != isolation) {
+                    connection.setTransactionIsolation(isolation);
+                } else {
+                    previous = -1;
+                }
+            }
             connection.setAutoCommit(false);
-            tx.execute(new Transaction(connection));
+            final Transaction transaction = new Transaction(this, connection);
+            tx.execute(transaction);
+            // committed explicitly so that serialization failures raised at commit reach the caller
+            connection.commit();
+            committed = true;
+            transaction.committed();
         } catch (Exception ex) {
-            if (connection != null)
-                connection.rollback();
+            if (connection != null) {
+                try {
+                    connection.rollback();
+                } catch (SQLException suppressed) {
+                    ex.addSuppressed(suppressed);
+                }
+            }
             throw ex;
         } finally {
+            if (listener != null)
+                listener.transaction(System.nanoTime() - time, committed);
             if (connection != null) {
                 try {
                     connection.setAutoCommit(true);
+                    if (previous >= 0) connection.setTransactionIsolation(previous);
                 } catch (SQLException ignore) {
                 }
                 release(connection);
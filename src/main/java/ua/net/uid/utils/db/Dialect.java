@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+
+public enum Dialect {
+    STANDARD {
+        @Override
+        public String upsert(String table, String[] keys, String[] columns) {
+            final StringBuilder builder = new StringBuilder("MERGE INTO ").append(table).append(" USING (VALUES (");
+            placeholders(builder, keys.length + columns.length);
+            builder.append(")) s (");
+            list(builder, keys, columns, "", "");
+            builder.append(") ON (");
+            for (int i = 0; i < keys.length; ++i) {
+                if (i > 0) builder.append(" AND ");
+                builder.append(table).append('.').append(keys[i]).append(" = s.").append(keys[i]);
+            }
+            builder.append(')');
+            if (columns.length > 0) {
+                builder.append(" WHEN MATCHED THEN UPDATE SET ");
+                for (int i = 0; i < columns.length; ++i) {
+                    if (i > 0) builder.append(", ");
+                    builder.append(columns[i]).append(" = s.").append(columns[i]);
+                }
+            }
+            builder.append(" WHEN NOT MATCHED THEN INSERT (");
+            list(builder, keys, columns, "", "");
+            builder.append(") VALUES (");
+            list(builder, keys, columns, "s.", "");
+            return builder.append(')').toString();
+        }
+    },
+    H2 {
+        @Override
+        public String upsert(String table, String[] keys, String[] columns) {
+            final StringBuilder builder = new StringBuilder("MERGE INTO ").append(table).append(" (");
+            list(builder, keys, columns, "", "");
+            builder.append(") KEY (");
+            list(builder, keys, new String[0], "", "");
+            builder.append(") VALUES (");
+            placeholders(builder, keys.length + columns.length);
+            return builder.append(')').toString();
+        }
+    },
+    POSTGRESQL {
+        @Override
+        public String upsert(String table, String[] keys, String[] columns) {
+            final StringBuilder builder = insert(table, keys, columns).append(" ON CONFLICT (");
+            list(builder, keys, new String[0], "", "");
+            builder.append(')');
+            if (columns.length == 0)
+                return builder.append(" DO NOTHING").toString();
+            builder.append(" DO UPDATE SET ");
+            for (int i = 0; i < columns.length; ++i) {
+                if (i > 0) builder.append(", ");
+                builder.append(columns[i]).append(" = EXCLUDED.").append(columns[i]);
+            }
+            return builder.toString();
+        }
+    },
+    MYSQL {
+        @Override
+        public String upsert(String table, String[] keys, String[] columns) {
+            final StringBuilder builder = insert(table, keys, columns).append(" ON DUPLICATE KEY UPDATE ");
+            final String[] updates = columns.length > 0 ? columns : new String[]{keys[0]};
+            for (int i = 0; i < updates.length; ++i) {
+                if (i > 0) builder.append(", ");
+                builder.append(updates[i]).append(" = VALUES(").append(updates[i]).append(')');
+            }
+            return builder.toString();
+        }
+    };
+
+    public abstract String upsert(String table, String[] keys, String[] columns);
+
+    public static Dialect of(DatabaseMetaData meta) throws SQLException {
+        final String product = meta.getDatabaseProductName().toLowerCase(Locale.ROOT);
+        if (product.contains("h2")) return H2;
+        if (product.contains("postgres")) return POSTGRESQL;
+        if (product.contains("mysql") || product.contains("mariadb")) return MYSQL;
+        return STANDARD;
+    }
+
+    private static StringBuilder insert(String table, String[] keys, String[] columns) {
+        final StringBuilder builder = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        list(builder, keys, columns, "", "");
+        builder.append(") VALUES (");
+        placeholders(builder, keys.length + columns.length);
+        return builder.append(')');
+    }
+
+    private static void placeholders(StringBuilder builder, int count) {
+        for (int i = 0; i < count; ++i)
+            builder.append(i == 0 ? "?" : ", ?");
+    }
+
+    private static void list(StringBuilder builder, String[] keys, String[] columns, String prefix, String suffix) {
+        boolean first = true;
+        for (String[] names : new String[][]{keys, columns}) {
+            for (String name : names) {
+                if (!first) builder.append(", ");
+                builder.append(prefix).append(name).append(suffix);
+                first = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public final class Options {
+    static final Options NONE = new Options(new Options(), true);
+
+    private final boolean immutable;
+    private int fetchSize = 0;
+    private int maxRows = 0;
+    private int timeout = 0;
+    private int fetchDirection = ResultSet.FETCH_FORWARD;
+
+    public Options() {
+        this.immutable = false;
+    }
+
+    public Options(Options options) {
+        this(options, false);
+    }
+
+    private Options(Options options, boolean immutable) {
+        this.immutable = immutable;
+        this.fetchSize = options.fetchSize;
+        this.maxRows = options.maxRows;
+        this.timeout = options.timeout;
+        this.fetchDirection = options.fetchDirection;
+    }
+
+    public Options immutable() {
+        return immutable ? this : new Options(this, true);
+    }
+
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    public Options fetchSize(int rows) {
+        check();
+        if (rows < 0)
+            throw new IllegalArgumentException("fetch size must not be negative");
+        fetchSize = rows;
+        return this;
+    }
+
+    public Options maxRows(int rows) {
+        check();
+        if (rows < 0)
+            throw new IllegalArgumentException("max rows must not be negative");
+        maxRows = rows;
+        return this;
+    }
+
+    public Options timeout(int seconds) {
+        check();
+        if (seconds < 0)
+            throw new IllegalArgumentException("timeout must not be negative");
+        timeout = seconds;
+        return this;
+    }
+
+    public Options fetchDirection(int direction) {
+        check();
+        if (direction != ResultSet.FETCH_FORWARD && direction != ResultSet.FETCH_REVERSE && direction != ResultSet.FETCH_UNKNOWN)
+            throw new IllegalArgumentException("unknown fetch direction: " + direction);
+        fetchDirection = direction;
+        return this;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public int getFetchDirection() {
+        return fetchDirection;
+    }
+
+    private void check() {
+        if (immutable)
+            throw new UnsupportedOperationException("options are read-only, copy them with new Options(options)");
+    }
+
+    void apply(Statement statement) throws SQLException {
+        if (fetchSize > 0) statement.setFetchSize(fetchSize);
+        if (maxRows > 0) statement.setMaxRows(maxRows);
+        if (timeout > 0) statement.setQueryTimeout(timeout);
+        if (fetchDirection != ResultSet.FETCH_FORWARD) statement.setFetchDirection(fetchDirection);
+    }
+
+    void reset(Statement statement) {
+        try {
+            if (fetchSize > 0) statement.setFetchSize(0);
+            if (maxRows > 0) statement.setMaxRows(0);
+            if (timeout > 0) statement.setQueryTimeout(0);
+            if (fetchDirection != ResultSet.FETCH_FORWARD) statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+        } catch (final SQLException ignored) {
+        }
+    }
+}
@@ -17,11 +17,22 @@ package ua.net.uid.utils.db;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 
 public final class Processor {
+    public static final int STREAM_FETCH_SIZE = 1000;
+    private static final int INITIAL_CAPACITY = 16;
+
     private final Session session;
     private final String query;
     private final Object[] params;
+    private Options options = null;
+    private long fetched = -1;
+    private boolean serverSide = false;
 
     Processor(Session session, String query, Object[] params) {
         this.session = session;
@@ -30,30 +41,74 @@ public final class Processor {
     }
 
     static void bind(PreparedStatement statement, Object[] params) throws SQLException {
+        bind(statement, 0, params);
+    }
+
+    static void bind(PreparedStatement statement, int offset, Object[] params) throws SQLException {
         if (params != null && params.length > 0) {
             int count = params.length;
             for (int i = 0; i < count; ) {
                 final Object param = params[i++];
                 if (param instanceof Enum || param instanceof CharSequence) {
-                    statement.setString(i, param.toString());
+                    statement.setString(offset + i, param.toString());
                 } else {
-                    statement.setObject(i, param);
+                    statement.setObject(offset + i, param);
                 }
             }
         }
     }
 
+    public Processor fetchSize(int rows) {
+        options().fetchSize(rows);
+        return this;
+    }
+
+    public Processor maxRows(int rows) {
+        options().maxRows(rows);
+        return this;
+    }
+
+    public Processor timeout(int seconds) {
+        options().timeout(seconds);
+        return this;
+    }
+
+    public Processor fetchDirection(int direction) {
+        options().fetchDirection(direction);
+        return this;
+    }
+
+    public Processor serverSide() {
+        return serverSide(true);
+    }
+
+    public Processor serverSide(boolean enabled) {
+        serverSide = enabled;
+        return this;
+    }
+
+    private Options options() {
+        if (options == null)
+            options = new Options(session.options());
+        return options;
+    }
+
     public boolean execute() throws SQLException {
-        return process(Connection::prepareStatement, PreparedStatement::execute);
+        return process(false, false, PreparedStatement::execute);
     }
 
     public int update() throws SQLException {
-        return process(Connection::prepareStatement, PreparedStatement::executeUpdate);
+        return process(false, false, statement -> {
+            final int count = statement.executeUpdate();
+            fetched = count;
+            return count;
+        });
     }
 
     public <T> T update(final Outcome<T> outcome) throws SQLException {
         return process(
-                (connection, query) -> connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS),
+                true,
+                false,
                 statement -> {
                     ResultSet result = null;
                     try {
@@ -71,7 +126,8 @@ public final class Processor {
 
     public <T> T select(final Outcome<T> outcome) throws SQLException {
         return process(
-                Connection::prepareStatement,
+                false,
+                true,
                 statement -> {
                     ResultSet result = null;
                     try {
@@ -87,31 +143,30 @@ public final class Processor {
     }
 
     public <T> T scalar(final Fetcher<T> fetcher) throws SQLException {
-        return select(result -> result.next() ? fetcher.fetch(result) : null);
+        // the single-row limit applies to this call only, a reused processor keeps its own options
+        final Options saved = options;
+        options = new Options(saved != null ? saved : session.options()).maxRows(1);
+        try {
+            return select(result -> {
+                if (!result.next()) return null;
+                fetched = 1;
+                return resolve(fetcher, result).fetch(result);
+            });
+        } finally {
+            options = saved;
+        }
     }
 
     public <T> void foreach(final Fetcher<T> fetcher) throws SQLException {
-        select(result -> {
-            while (result.next())
-                fetcher.fetch(result);
-            return null;
-        });
+        select(result -> fetch(result, fetcher, null));
     }
 
     public <T> void foreach(final Fetcher<T> fetcher, final Callback<T> callback) throws SQLException {
-        select(result -> {
-            while (result.next())
-                callback.call(fetcher.fetch(result));
-            return null;
-        });
+        select(result -> fetch(result, fetcher, callback));
     }
 
     public <T> void collect(final Fetcher<T> fetcher, final Collection<T> collection) throws SQLException {
-        select(result -> {
-            while (result.next())
-                collection.add(fetcher.fetch(result));
-            return null;
-        });
+        select(result -> fetch(result, fetcher, collection::add));
     }
 
     public <T> List<T> list(final Fetcher<T> fetcher) throws SQLException {
@@ -129,8 +184,17 @@ public final class Processor {
     @SuppressWarnings("unchecked")
     public <K, T> void map(final Fetcher<T> fetcher, final String key, final Map<K, T> map) throws SQLException {
         select(result -> {
-            while (result.next())
-                map.put((K) result.getObject(key), fetcher.fetch(result));
+            final int index = RowReader.of(result).index(key);
+            final Fetcher<T> resolved = resolve(fetcher, result);
+            long rows = 0;
+            try {
+                while (result.next()) {
+                    map.put((K) result.getObject(index), resolved.fetch(result));
+                    ++rows;
+                }
+            } finally {
+                fetched = rows;
+            }
             return null;
         });
     }
@@ -141,22 +205,381 @@ public final class Processor {
         return map;
     }
 
-    protected <T> T process(Preparer preparer, final Handler<T> callback) throws SQLException {
+    public <T> CompletableFuture<T> selectAsync(final Outcome<T> outcome) {
+        return async(() -> select(outcome));
+    }
+
+    public <T> CompletableFuture<T> scalarAsync(final Fetcher<T> fetcher) {
+        return async(() -> scalar(fetcher));
+    }
+
+    public <T> CompletableFuture<List<T>> listAsync(final Fetcher<T> fetcher) {
+        return async(() -> list(fetcher));
+    }
+
+    public <T> CompletableFuture<Void> foreachAsync(final Fetcher<T> fetcher, final Callback<T> callback) {
+        return async(() -> select(result -> fetch(result, fetcher, callback)));
+    }
+
+    public CompletableFuture<Integer> updateAsync() {
+        return async(this::update);
+    }
+
+    public <T> CompletableFuture<T> updateAsync(final Outcome<T> outcome) {
+        return async(() -> update(outcome));
+    }
+
+    private <T> CompletableFuture<T> async(final Async.Task<T> task) {
+        final Async async = session.async();
+        if (async == null)
+            return Async.now(task);
+        return async.submit(async.new Call<>(task));
+    }
+
+    public long[] longs() throws SQLException {
+        return longs(LongFetcher.FIRST);
+    }
+
+    public long[] longs(final LongFetcher fetcher) throws SQLException {
+        return select(result -> {
+            long[] values = new long[INITIAL_CAPACITY];
+            int size = 0;
+            try {
+                while (result.next()) {
+                    if (size == values.length) values = Arrays.copyOf(values, grow(size));
+                    values[size++] = fetcher.fetch(result);
+                }
+            } finally {
+                fetched = size;
+            }
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        });
+    }
+
+    public int[] ints() throws SQLException {
+        return ints(IntFetcher.FIRST);
+    }
+
+    public int[] ints(final IntFetcher fetcher) throws SQLException {
+        return select(result -> {
+            int[] values = new int[INITIAL_CAPACITY];
+            int size = 0;
+            try {
+                while (result.next()) {
+                    if (size == values.length) values = Arrays.copyOf(values, grow(size));
+                    values[size++] = fetcher.fetch(result);
+                }
+            } finally {
+                fetched = size;
+            }
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        });
+    }
+
+    public double[] doubles() throws SQLException {
+        return doubles(DoubleFetcher.FIRST);
+    }
+
+    public double[] doubles(final DoubleFetcher fetcher) throws SQLException {
+        return select(result -> {
+            double[] values = new double[INITIAL_CAPACITY];
+            int size = 0;
+            try {
+                while (result.next()) {
+                    if (size == values.length) values = Arrays.copyOf(values, grow(size));
+                    values[size++] = fetcher.fetch(result);
+                }
+            } finally {
+                fetched = size;
+            }
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        });
+    }
+
+    public void foreachLong(final LongConsumer consumer) throws SQLException {
+        foreachLong(LongFetcher.FIRST, consumer);
+    }
+
+    public void foreachLong(final LongFetcher fetcher, final LongConsumer consumer) throws SQLException {
+        select(result -> {
+            long rows = 0;
+            try {
+                while (result.next()) {
+                    consumer.accept(fetcher.fetch(result));
+                    ++rows;
+                }
+            } finally {
+                fetched = rows;
+            }
+            return null;
+        });
+    }
+
+    public void foreachInt(final IntConsumer consumer) throws SQLException {
+        foreachInt(IntFetcher.FIRST, consumer);
+    }
+
+    public void foreachInt(final IntFetcher fetcher, final IntConsumer consumer) throws SQLException {
+        select(result -> {
+            long rows = 0;
+            try {
+                while (result.next()) {
+                    consumer.accept(fetcher.fetch(result));
+                    ++rows;
+                }
+            } finally {
+                fetched = rows;
+            }
+            return null;
+        });
+    }
+
+    public void foreachDouble(final DoubleConsumer consumer) throws SQLException {
+        foreachDouble(DoubleFetcher.FIRST, consumer);
+    }
+
+    public void foreachDouble(final DoubleFetcher fetcher, final DoubleConsumer consumer) throws SQLException {
+        select(result -> {
+            long rows = 0;
+            try {
+                while (result.next()) {
+                    consumer.accept(fetcher.fetch(result));
+                    ++rows;
+                }
+            } finally {
+                fetched = rows;
+            }
+            return null;
+        });
+    }
+
+    public Columns columns() throws SQLException {
+        return select(result -> {
+            final Columns columns = Columns.read(result);
+            fetched = columns.size();
+            return columns;
+        });
+    }
+
+    public <T> Cursor<T> cursor(final Fetcher<T> fetcher) throws SQLException {
+        if (!serverSide && options().getFetchSize() == 0)
+            options.fetchSize(STREAM_FETCH_SIZE);
+        final QueryListener listener = session.listener();
+        long time = listener != null ? System.nanoTime() : 0;
         Connection connection = null;
         PreparedStatement statement = null;
+        Scope scope = null;
         try {
-            connection = session.connection();
-            statement = preparer.prepare(connection, query);
+            connection = session.reader();
+            if (serverSide && session.dedicated() && connection.getAutoCommit()) scope = new Scope(connection);
+            if (listener != null) time = acquired(listener, time);
+            statement = prepare(connection, false);
+            configure(statement);
             bind(statement, params);
-            return callback.handle(statement);
+            if (listener != null) time = prepared(listener, time);
+            final ResultSet result;
+            try {
+                result = statement.executeQuery();
+            } catch (SQLException | RuntimeException ex) {
+                if (listener != null) listener.executed(query, System.nanoTime() - time, -1, ex);
+                throw ex;
+            }
+            final Cursor<T> cursor = new Cursor<>(result, resolve(fetcher, result), new Finisher(connection, statement, scope, listener, time));
+            connection = null;
+            statement = null;
+            scope = null;
+            return cursor;
         } finally {
+            if (statement != null) recycle(connection, false, statement);
+            if (scope != null) scope.close();
+            if (connection != null)
+                session.release(connection);
+        }
+    }
+
+    public <T> Stream<T> stream(final Fetcher<T> fetcher) throws SQLException {
+        return cursor(fetcher).stream();
+    }
+
+    private <T> T process(final boolean keys, final boolean read, final Handler<T> callback) throws SQLException {
+        final QueryListener listener = session.listener();
+        long time = listener != null ? System.nanoTime() : 0;
+        final Async.Call<?> call = Async.current();
+        boolean attached = false;
+        Connection connection = null;
+        PreparedStatement statement = null;
+        Statement previous = null;
+        Scope scope = null;
+        try {
+            connection = read ? session.reader() : session.connection();
+            // a shared connection would drag its other users into the read-only transaction
+            if (serverSide && read && session.dedicated() && connection.getAutoCommit()) scope = new Scope(connection);
+            if (listener != null) time = acquired(listener, time);
+            statement = read ? prepare(connection, keys) : session.prepare(connection, query, keys);
+            configure(statement);
+            bind(statement, params);
+            if (call != null) {
+                previous = call.attach(statement);
+                attached = true;
+            }
+            if (listener == null)
+                return callback.handle(statement);
+            time = prepared(listener, time);
+            fetched = -1;
+            try {
+                final T result = callback.handle(statement);
+                listener.executed(query, System.nanoTime() - time, fetched, null);
+                return result;
+            } catch (SQLException | RuntimeException ex) {
+                listener.executed(query, System.nanoTime() - time, fetched, ex);
+                throw ex;
+            }
+        } finally {
+            if (attached) call.detach(previous);
+            if (!read && statement != null) session.written();
             if (statement != null) {
-                try { statement.close(); } catch (final SQLException ignored) {}
+                if (read) {
+                    recycle(connection, keys, statement);
+                } else {
+                    restore(statement);
+                    session.recycle(connection, query, keys, statement);
+                }
+            }
+            if (scope != null) scope.close();
+            session.release(connection);
+        }
+    }
+
+    private PreparedStatement prepare(Connection connection, boolean keys) throws SQLException {
+        if (!serverSide)
+            return session.prepare(connection, query, keys);
+        // cursor statements bypass the cache, their type and holdability differ from the shared ones
+        PreparedStatement statement = null;
+        if (connection.getHoldability() != ResultSet.CLOSE_CURSORS_AT_COMMIT) {
+            // a holdable cursor has to be materialized by the server on commit
+            try {
+                statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT);
+            } catch (SQLFeatureNotSupportedException ignored) {
+            }
+        }
+        if (statement == null)
+            statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        if (options().getFetchSize() == 0) {
+            // mysql only streams row by row when asked with the minimal fetch size
+            statement.setFetchSize(session.dialect(connection) == Dialect.MYSQL ? Integer.MIN_VALUE : STREAM_FETCH_SIZE);
+        }
+        return statement;
+    }
+
+    private void recycle(Connection connection, boolean keys, PreparedStatement statement) {
+        if (serverSide) {
+            try { statement.close(); } catch (final SQLException ignored) {}
+        } else {
+            restore(statement);
+            session.recycle(connection, query, keys, statement);
+        }
+    }
+
+    private <T> Void fetch(final ResultSet result, final Fetcher<T> fetcher, final Callback<T> callback) throws SQLException {
+        final Fetcher<T> resolved = resolve(fetcher, result);
+        long rows = 0;
+        try {
+            while (result.next()) {
+                final T item = resolved.fetch(result);
+                if (callback != null) callback.call(item);
+                ++rows;
             }
+        } finally {
+            fetched = rows;
+        }
+        return null;
+    }
+
+    private <T> Fetcher<T> resolve(final Fetcher<T> fetcher, final ResultSet result) throws SQLException {
+        if (!(fetcher instanceof RowFetcher)) return fetcher;
+        final RowFetcher<T> rows = (RowFetcher<T>) fetcher;
+        final RowReader reader = RowReader.of(result);
+        return row -> rows.fetch(reader);
+    }
+
+    private static int grow(int size) {
+        if (size >= Integer.MAX_VALUE - 8)
+            throw new OutOfMemoryError("result is too large for an array");
+        return (int) Math.min(Integer.MAX_VALUE - 8L, size * 2L);
+    }
+
+    private static long acquired(QueryListener listener, long time) {
+        final long now = System.nanoTime();
+        listener.acquired(now - time);
+        return now;
+    }
+
+    private long prepared(QueryListener listener, long time) {
+        final long now = System.nanoTime();
+        listener.prepared(query, now - time);
+        return now;
+    }
+
+    private void configure(PreparedStatement statement) throws SQLException {
+        (options != null ? options : session.options()).apply(statement);
+    }
+
+    private void restore(PreparedStatement statement) {
+        (options != null ? options : session.options()).reset(statement);
+    }
+
+    private final class Finisher implements LongConsumer {
+        private final Connection connection;
+        private final PreparedStatement statement;
+        private final Scope scope;
+        private final QueryListener listener;
+        private final long time;
+
+        Finisher(Connection connection, PreparedStatement statement, Scope scope, QueryListener listener, long time) {
+            this.connection = connection;
+            this.statement = statement;
+            this.scope = scope;
+            this.listener = listener;
+            this.time = time;
+        }
+
+        @Override
+        public void accept(long rows) {
+            if (listener != null) listener.executed(query, System.nanoTime() - time, rows, null);
+            recycle(connection, false, statement);
+            if (scope != null) scope.close();
             session.release(connection);
         }
     }
 
+    private static final class Scope {
+        private final Connection connection;
+        private final boolean readOnly;
+
+        Scope(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.readOnly = connection.isReadOnly();
+            connection.setReadOnly(true);
+            try {
+                connection.setAutoCommit(false);
+            } catch (SQLException ex) {
+                try { connection.setReadOnly(readOnly); } catch (final SQLException ignored) {}
+                throw ex;
+            }
+        }
+
+        void close() {
+            // nothing was written, so a failed commit only has to be rolled back
+            try {
+                connection.commit();
+            } catch (final SQLException ex) {
+                try { connection.rollback(); } catch (final SQLException ignored) {}
+            }
+            try { connection.setAutoCommit(true); } catch (final SQLException ignored) {}
+            try { connection.setReadOnly(readOnly); } catch (final SQLException ignored) {}
+        }
+    }
+
     public interface Callback<P> {
         void call(P param);
     }
@@ -164,8 +587,4 @@ public final class Processor {
     private interface Handler<T> {
         T handle(final PreparedStatement statement) throws SQLException;
     }
-
-    private interface Preparer {
-        PreparedStatement prepare(final Connection connection, final String query) throws SQLException;
-    }
 }
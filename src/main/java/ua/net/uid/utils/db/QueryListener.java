@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+public interface QueryListener {
+    default void acquired(long nanos) {
+    }
+
+    default void prepared(String query, long nanos) {
+    }
+
+    default void executed(String query, long nanos, long rows, Exception error) {
+    }
+
+    default void batched(String query, int rows, long nanos, Exception error) {
+    }
+
+    default void transaction(long nanos, boolean committed) {
+    }
+}
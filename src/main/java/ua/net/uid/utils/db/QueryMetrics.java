@@ -0,0 +1,250 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class QueryMetrics implements QueryListener {
+    private static final Logger LOGGER = Logger.getLogger(QueryMetrics.class.getName());
+
+    private final long slow;
+    private final int capacity;
+    private final ConcurrentHashMap<String, Stats> queries = new ConcurrentHashMap<>();
+    private final Histogram acquire = new Histogram();
+    private final Histogram prepare = new Histogram();
+    private final Histogram transactions = new Histogram();
+    private final LongAdder rollbacks = new LongAdder();
+    private final LongAdder slowQueries = new LongAdder();
+
+    public QueryMetrics() {
+        this(0, 1024);
+    }
+
+    public QueryMetrics(long slowMillis) {
+        this(slowMillis, 1024);
+    }
+
+    public QueryMetrics(long slowMillis, int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.slow = slowMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(slowMillis) : 0;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void acquired(long nanos) {
+        acquire.record(nanos);
+    }
+
+    @Override
+    public void prepared(String query, long nanos) {
+        prepare.record(nanos);
+    }
+
+    @Override
+    public void executed(String query, long nanos, long rows, Exception error) {
+        final Stats stats = stats(query);
+        stats.execute.record(nanos);
+        if (rows > 0) stats.rows.add(rows);
+        if (error != null) stats.errors.increment();
+        if (slow > 0 && nanos >= slow) slow(query, nanos, rows);
+    }
+
+    @Override
+    public void batched(String query, int rows, long nanos, Exception error) {
+        final Stats stats = stats(query);
+        stats.execute.record(nanos);
+        stats.batches.increment();
+        stats.rows.add(rows);
+        if (error != null) stats.errors.increment();
+        if (slow > 0 && nanos >= slow) slow(query, nanos, rows);
+    }
+
+    @Override
+    public void transaction(long nanos, boolean committed) {
+        transactions.record(nanos);
+        if (!committed) rollbacks.increment();
+    }
+
+    public Histogram getAcquire() {
+        return acquire;
+    }
+
+    public Histogram getPrepare() {
+        return prepare;
+    }
+
+    public Histogram getTransactions() {
+        return transactions;
+    }
+
+    public long getRollbacks() {
+        return rollbacks.sum();
+    }
+
+    public long getSlowQueries() {
+        return slowQueries.sum();
+    }
+
+    public Stats get(String query) {
+        return queries.get(query);
+    }
+
+    public Map<String, Stats> getQueries() {
+        return Collections.unmodifiableMap(queries);
+    }
+
+    public void reset() {
+        queries.clear();
+        acquire.reset();
+        prepare.reset();
+        transactions.reset();
+        rollbacks.reset();
+        slowQueries.reset();
+    }
+
+    protected void slow(String query, long nanos, long rows) {
+        slowQueries.increment();
+        if (LOGGER.isLoggable(Level.WARNING))
+            LOGGER.log(Level.WARNING, "slow query ({0} ms, {1} rows): {2}", new Object[]{TimeUnit.NANOSECONDS.toMillis(nanos), rows, query});
+    }
+
+    private Stats stats(String query) {
+        Stats stats = queries.get(query);
+        if (stats == null) {
+            // unbounded sets of distinct statements (e.g. inlined literals) must not grow the map forever
+            if (queries.size() >= capacity) {
+                stats = queries.get("");
+                return stats != null ? stats : queries.computeIfAbsent("", key -> new Stats());
+            }
+            stats = queries.computeIfAbsent(query, key -> new Stats());
+        }
+        return stats;
+    }
+
+    public static final class Stats {
+        private final Histogram execute = new Histogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder batches = new LongAdder();
+
+        public Histogram getExecute() {
+            return execute;
+        }
+
+        public long getCount() {
+            return execute.getCount();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getBatches() {
+            return batches.sum();
+        }
+    }
+
+    public static final class Histogram {
+        // log-linear buckets: exact below 16, then 8 sub-buckets per power of two (~12% relative error)
+        private static final int LINEAR = 16;
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int SIZE = LINEAR + (63 - 4) * SUB_COUNT;
+
+        private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        public void record(long value) {
+            if (value < 0) value = 0;
+            counts.incrementAndGet(index(value));
+            count.increment();
+            total.add(value);
+            max.accumulate(value);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotal() {
+            return total.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            final long samples = count.sum();
+            return samples == 0 ? 0 : (double) total.sum() / samples;
+        }
+
+        public long getPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100)
+                throw new IllegalArgumentException("percentile must be within 0..100");
+            final long[] snapshot = new long[SIZE];
+            long samples = 0;
+            for (int i = 0; i < SIZE; ++i)
+                samples += snapshot[i] = counts.get(i);
+            if (samples == 0) return 0;
+            final long rank = Math.max(1, (long) Math.ceil(samples * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < SIZE; ++i) {
+                seen += snapshot[i];
+                if (seen >= rank) return Math.min(upper(i), getMax());
+            }
+            return getMax();
+        }
+
+        public void reset() {
+            for (int i = 0; i < SIZE; ++i)
+                counts.set(i, 0);
+            count.reset();
+            total.reset();
+            max.reset();
+        }
+
+        static int index(long value) {
+            if (value < LINEAR) return (int) value;
+            final int exponent = 63 - Long.numberOfLeadingZeros(value);
+            final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+            return LINEAR + (exponent - 4) * SUB_COUNT + sub;
+        }
+
+        static long upper(int index) {
+            if (index < LINEAR) return index;
+            final int exponent = (index - LINEAR) / SUB_COUNT + 4;
+            final int sub = (index - LINEAR) % SUB_COUNT;
+            final long lower = (long) (SUB_COUNT + sub) << (exponent - SUB_BITS);
+            return lower + (1L << (exponent - SUB_BITS)) - 1;
+        }
+    }
+}
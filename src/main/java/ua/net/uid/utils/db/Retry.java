@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+public final class Retry {
+    public static final String SERIALIZATION_FAILURE = "40001";
+    public static final String DEADLOCK_DETECTED = "40P01";
+
+    private int isolation = -1;
+    private int attempts = 3;
+    private long initial = TimeUnit.MILLISECONDS.toNanos(10);
+    private long maximum = TimeUnit.SECONDS.toNanos(1);
+    private Predicate<SQLException> classifier = states(SERIALIZATION_FAILURE, DEADLOCK_DETECTED);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder tries = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public Retry isolation(int level) {
+        this.isolation = level;
+        return this;
+    }
+
+    public Retry attempts(int attempts) {
+        if (attempts <= 0)
+            throw new IllegalArgumentException("attempts must be positive");
+        this.attempts = attempts;
+        return this;
+    }
+
+    public Retry backoff(long initialMillis, long maximumMillis) {
+        if (initialMillis < 0 || maximumMillis < initialMillis)
+            throw new IllegalArgumentException("invalid backoff " + initialMillis + ".." + maximumMillis);
+        this.initial = TimeUnit.MILLISECONDS.toNanos(initialMillis);
+        this.maximum = TimeUnit.MILLISECONDS.toNanos(maximumMillis);
+        return this;
+    }
+
+    public Retry retryOn(String... sqlStates) {
+        return retryOn(states(sqlStates));
+    }
+
+    public Retry retryOn(Predicate<SQLException> classifier) {
+        if (classifier == null)
+            throw new IllegalArgumentException("classifier is null");
+        this.classifier = classifier;
+        return this;
+    }
+
+    public int getIsolation() {
+        return isolation;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getTries() {
+        return tries.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public boolean isRetryable(SQLException ex) {
+        for (Throwable current = ex; current != null; current = current.getCause()) {
+            if (current instanceof SQLException) {
+                for (SQLException next = (SQLException) current; next != null; next = next.getNextException()) {
+                    if (classifier.test(next)) return true;
+                    if (next.getNextException() == next) break;
+                }
+            }
+            if (current.getCause() == current) break;
+        }
+        return false;
+    }
+
+    public static Predicate<SQLException> states(String... sqlStates) {
+        final Set<String> states = new HashSet<>(Arrays.asList(sqlStates));
+        return ex -> ex instanceof SQLTransactionRollbackException || states.contains(ex.getSQLState());
+    }
+
+    void execute(Database database, Solid tx) throws SQLException {
+        calls.increment();
+        for (int attempt = 1; ; ++attempt) {
+            tries.increment();
+            try {
+                database.attempt(tx, isolation);
+                return;
+            } catch (SQLException ex) {
+                if (!isRetryable(ex)) throw ex;
+                conflicts.increment();
+                if (attempt >= attempts) {
+                    failures.increment();
+                    throw ex;
+                }
+                pause(attempt, ex);
+            }
+        }
+    }
+
+    private void pause(int attempt, SQLException cause) throws SQLException {
+        // full jitter: uniformly random within the exponentially growing window
+        final long window = Math.min(maximum, initial << Math.min(attempt - 1, 30));
+        if (window <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(window + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failures.increment();
+            throw cause;
+        }
+    }
+}
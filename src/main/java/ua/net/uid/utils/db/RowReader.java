@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class RowReader {
+    private static final int LAYOUTS = 1024;
+    private static final ConcurrentHashMap<String, Layout> layouts = new ConcurrentHashMap<>();
+    private static final ThreadLocal<WeakReference<RowReader>> current = new ThreadLocal<>();
+
+    private final ResultSet result;
+    private final Layout layout;
+
+    private RowReader(ResultSet result, Layout layout) {
+        this.result = result;
+        this.layout = layout;
+    }
+
+    public static RowReader of(ResultSet result) throws SQLException {
+        final ResultSetMetaData meta = result.getMetaData();
+        final int count = meta.getColumnCount();
+        final String[] labels = new String[count];
+        final StringBuilder key = new StringBuilder(count * 16);
+        for (int i = 0; i < count; ++i)
+            key.append(labels[i] = meta.getColumnLabel(i + 1)).append('\0');
+        // keyed by the labels themselves, so the same sql on another schema or after an alter gets its own layout
+        Layout layout = layouts.get(key.toString());
+        if (layout == null) {
+            if (layouts.size() >= LAYOUTS) layouts.clear();
+            layout = new Layout(labels);
+            layouts.put(key.toString(), layout);
+        }
+        return new RowReader(result, layout);
+    }
+
+    static RowReader current(ResultSet result) throws SQLException {
+        final WeakReference<RowReader> reference = current.get();
+        RowReader reader = reference != null ? reference.get() : null;
+        if (reader == null || reader.result != result) {
+            reader = of(result);
+            current.set(new WeakReference<>(reader));
+        }
+        return reader;
+    }
+
+    public ResultSet getResultSet() {
+        return result;
+    }
+
+    public int getColumnCount() {
+        return layout.count;
+    }
+
+    public int index(String label) throws SQLException {
+        Integer index = layout.indexes.get(label);
+        if (index == null) index = layout.indexes.get(label.toLowerCase(Locale.ROOT));
+        if (index == null) throw new SQLException("column " + label + " not found", "42S22");
+        return index;
+    }
+
+    public boolean wasNull() throws SQLException {
+        return result.wasNull();
+    }
+
+    public Object getObject(String label) throws SQLException {
+        return result.getObject(index(label));
+    }
+
+    public <T> T getObject(String label, Class<T> type) throws SQLException {
+        return result.getObject(index(label), type);
+    }
+
+    public String getString(String label) throws SQLException {
+        return result.getString(index(label));
+    }
+
+    public boolean getBoolean(String label) throws SQLException {
+        return result.getBoolean(index(label));
+    }
+
+    public int getInt(String label) throws SQLException {
+        return result.getInt(index(label));
+    }
+
+    public long getLong(String label) throws SQLException {
+        return result.getLong(index(label));
+    }
+
+    public double getDouble(String label) throws SQLException {
+        return result.getDouble(index(label));
+    }
+
+    public BigDecimal getBigDecimal(String label) throws SQLException {
+        return result.getBigDecimal(index(label));
+    }
+
+    public byte[] getBytes(String label) throws SQLException {
+        return result.getBytes(index(label));
+    }
+
+    public Date getDate(String label) throws SQLException {
+        return result.getDate(index(label));
+    }
+
+    public Time getTime(String label) throws SQLException {
+        return result.getTime(index(label));
+    }
+
+    public Timestamp getTimestamp(String label) throws SQLException {
+        return result.getTimestamp(index(label));
+    }
+
+    static void clear() {
+        layouts.clear();
+    }
+
+    private static final class Layout {
+        private final int count;
+        private final Map<String, Integer> indexes;
+
+        Layout(String[] labels) {
+            count = labels.length;
+            indexes = new HashMap<>(count * 4);
+            for (int i = count; i > 0; --i) {
+                // walking backwards lets the first of duplicate labels win, as with ResultSet.findColumn
+                final String label = labels[i - 1];
+                indexes.put(label, i);
+                indexes.put(label.toLowerCase(Locale.ROOT), i);
+            }
+        }
+    }
+}
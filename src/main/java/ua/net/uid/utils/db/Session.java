@@ -16,13 +16,111 @@
 package ua.net.uid.utils.db;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 public abstract class Session {
+    private volatile Options defaults = null;
+    private volatile Dialect dialect = null;
+
     protected abstract Connection connection() throws SQLException;
 
     protected abstract void release(Connection connection);
 
+    protected Connection reader() throws SQLException {
+        return connection();
+    }
+
+    Session parent() {
+        return null;
+    }
+
+    // read-only, since a session is shared between threads: replace them with defaults(Options) instead
+    public Options defaults() {
+        return options();
+    }
+
+    public void defaults(Options options) {
+        defaults = options != null ? options.immutable() : null;
+    }
+
+    Options options() {
+        final Options result = defaults;
+        if (result != null) return result;
+        final Session parent = parent();
+        return parent != null ? parent.options() : Options.NONE;
+    }
+
+    public Dialect getDialect() throws SQLException {
+        final Dialect result = root().dialect;
+        if (result != null) return result;
+        // a transaction reads it from the connection it already holds instead of acquiring a second one
+        Connection connection = null;
+        try {
+            connection = connection();
+            return dialect(connection);
+        } finally {
+            release(connection);
+        }
+    }
+
+    Dialect dialect(Connection connection) throws SQLException {
+        final Session root = root();
+        Dialect result = root.dialect;
+        if (result == null)
+            root.dialect = result = Dialect.of(connection.getMetaData());
+        return result;
+    }
+
+    private Session root() {
+        Session session = this;
+        for (Session parent = parent(); parent != null; parent = parent.parent())
+            session = parent;
+        return session;
+    }
+
+    boolean dedicated() {
+        return false;
+    }
+
+    void written() {
+        final Session parent = parent();
+        if (parent != null) parent.written();
+    }
+
+    QueryListener listener() {
+        final Session parent = parent();
+        return parent != null ? parent.listener() : null;
+    }
+
+    Async async() {
+        return null;
+    }
+
+    StatementCache statements() {
+        final Session parent = parent();
+        return parent != null ? parent.statements() : null;
+    }
+
+    PreparedStatement prepare(Connection connection, String query, boolean keys) throws SQLException {
+        final StatementCache cache = statements();
+        if (cache != null)
+            return cache.acquire(connection, query, keys);
+        return keys
+                ? connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)
+                : connection.prepareStatement(query);
+    }
+
+    void recycle(Connection connection, String query, boolean keys, PreparedStatement statement) {
+        final StatementCache cache = statements();
+        if (cache != null) {
+            cache.release(connection, query, keys, statement);
+        } else {
+            try { statement.close(); } catch (final SQLException ignored) {}
+        }
+    }
+
     public Processor query(String query, Object... params) {
         return new Processor(this, query, params);
     }
@@ -31,23 +129,34 @@ public abstract class Session {
         return new Batch(this, query);
     }
 
+    public <T> BulkLoader<T> loader(String table, String[] columns, BulkLoader.Binder<? super T> binder) {
+        return new BulkLoader<>(this, table, columns, binder);
+    }
+
     public void block(Block block) throws SQLException {
         Connection connection = null;
         try {
             connection = connection();
-            block.execute(new SubSession(connection));
+            block.execute(new SubSession(this, connection));
         } finally {
             release(connection);
         }
     }
 
     private static final class SubSession extends Session {
+        private final Session parent;
         private final Connection connection;
 
-        SubSession(final Connection connection) {
+        SubSession(final Session parent, final Connection connection) {
+            this.parent = parent;
             this.connection = connection;
         }
 
+        @Override
+        Session parent() {
+            return parent;
+        }
+
         @Override
         protected Connection connection() {
             return connection;
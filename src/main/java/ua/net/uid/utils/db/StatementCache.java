@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class StatementCache implements Connector.Listener {
+    private final int capacity;
+    private final LinkedHashMap<Key, PreparedStatement> statements = new LinkedHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    StatementCache(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    PreparedStatement acquire(Connection connection, String query, boolean keys) throws SQLException {
+        final PreparedStatement statement;
+        // checked out while in use, so one statement is never shared between two callers
+        synchronized (this) {
+            statement = statements.remove(new Key(connection, query, keys));
+        }
+        if (statement != null) {
+            if (!statement.isClosed()) {
+                hits.increment();
+                return statement;
+            }
+            evictions.increment();
+        }
+        misses.increment();
+        return keys
+                ? connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)
+                : connection.prepareStatement(query);
+    }
+
+    void release(Connection connection, String query, boolean keys, PreparedStatement statement) {
+        try {
+            statement.clearParameters();
+        } catch (SQLException ex) {
+            close(statement);
+            return;
+        }
+        final Key key = new Key(connection, query, keys);
+        final PreparedStatement replaced;
+        PreparedStatement evicted = null;
+        synchronized (this) {
+            replaced = statements.remove(key);
+            statements.put(key, statement);
+            if (statements.size() > capacity) {
+                Iterator<PreparedStatement> iterator = statements.values().iterator();
+                evicted = iterator.next();
+                iterator.remove();
+            }
+        }
+        if (replaced != null) close(replaced);
+        if (evicted != null) {
+            evictions.increment();
+            close(evicted);
+        }
+    }
+
+    public void invalidate(Connection connection) {
+        final List<PreparedStatement> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<Key, PreparedStatement>> iterator = statements.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, PreparedStatement> entry = iterator.next();
+                if (entry.getKey().connection == connection) {
+                    removed.add(entry.getValue());
+                    iterator.remove();
+                }
+            }
+        }
+        for (PreparedStatement statement : removed)
+            close(statement);
+    }
+
+    public void clear() {
+        final List<PreparedStatement> removed;
+        synchronized (this) {
+            removed = new ArrayList<>(statements.values());
+            statements.clear();
+        }
+        for (PreparedStatement statement : removed)
+            close(statement);
+    }
+
+    @Override
+    public void closed(Connection connection) {
+        invalidate(connection);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private static void close(PreparedStatement statement) {
+        try { statement.close(); } catch (final SQLException ignored) {}
+    }
+
+    private static final class Key {
+        private final Connection connection;
+        private final String query;
+        private final boolean keys;
+        private final int hash;
+
+        Key(Connection connection, String query, boolean keys) {
+            this.connection = connection;
+            this.query = query;
+            this.keys = keys;
+            this.hash = (System.identityHashCode(connection) * 31 + query.hashCode()) * 31 + (keys ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return connection == key.connection && keys == key.keys && query.equals(key.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -17,12 +17,31 @@ package ua.net.uid.utils.db;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
 
 public final class Transaction extends Session {
+    private final Session parent;
     private final Connection connection;
+    private final Savepoint savepoint;
+    private List<Runnable> committed = null;
+    private boolean wrote = false;
 
-    Transaction(final Connection connection) {
+    Transaction(final Session parent, final Connection connection) {
+        this(parent, connection, null);
+    }
+
+    private Transaction(final Session parent, final Connection connection, final Savepoint savepoint) {
+        this.parent = parent;
         this.connection = connection;
+        this.savepoint = savepoint;
+    }
+
+    @Override
+    Session parent() {
+        return parent;
     }
 
     @Override
@@ -34,11 +53,72 @@ public final class Transaction extends Session {
     protected void release(Connection connection) {
     }
 
+    public boolean isNested() {
+        return savepoint != null;
+    }
+
     public void commit() throws SQLException {
+        if (savepoint != null)
+            throw new SQLException("nested transaction is committed with its outer transaction");
         connection.commit();
+        committed();
     }
 
     public void rollback() throws SQLException {
-        connection.rollback();
+        if (savepoint != null) {
+            connection.rollback(savepoint);
+        } else {
+            connection.rollback();
+        }
+    }
+
+    public void afterCommit(Runnable action) {
+        if (savepoint != null) {
+            ((Transaction) parent).afterCommit(action);
+        } else {
+            if (committed == null) committed = new ArrayList<>();
+            committed.add(action);
+        }
+    }
+
+    // writes only become visible to other connections once the outer transaction commits
+    @Override
+    void written() {
+        if (savepoint != null) {
+            parent.written();
+        } else {
+            wrote = true;
+        }
+    }
+
+    void committed() {
+        if (wrote) {
+            wrote = false;
+            parent.written();
+        }
+        final List<Runnable> actions = committed;
+        committed = null;
+        if (actions != null) {
+            for (Runnable action : actions)
+                action.run();
+        }
+    }
+
+    public void nested(Solid tx) throws SQLException {
+        final Savepoint nested = connection.setSavepoint();
+        try {
+            tx.execute(new Transaction(this, connection, nested));
+        } catch (Exception ex) {
+            try {
+                connection.rollback(nested);
+            } catch (SQLException suppressed) {
+                ex.addSuppressed(suppressed);
+            }
+            throw ex;
+        }
+        try {
+            connection.releaseSavepoint(nested);
+        } catch (SQLFeatureNotSupportedException ignored) {
+        }
     }
 }
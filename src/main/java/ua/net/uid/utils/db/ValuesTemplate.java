@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class ValuesTemplate {
+    private final String prefix;
+    private final String tuple;
+    private final String suffix;
+    private final int width;
+    private final Map<Integer, String> rendered = new HashMap<>();
+
+    private ValuesTemplate(String prefix, String tuple, String suffix, int width) {
+        this.prefix = prefix;
+        this.tuple = tuple;
+        this.suffix = suffix;
+        this.width = width;
+    }
+
+    static ValuesTemplate parse(String query) {
+        final int length = query.length();
+        char quote = 0;
+        for (int i = 0; i < length; ++i) {
+            final char c = query.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if ((c == 'V' || c == 'v') && query.regionMatches(true, i, "VALUES", 0, 6)
+                    && (i == 0 || !Character.isJavaIdentifierPart(query.charAt(i - 1)))) {
+                int open = i + 6;
+                while (open < length && Character.isWhitespace(query.charAt(open))) ++open;
+                if (open < length && query.charAt(open) == '(')
+                    return parse(query, open);
+            }
+        }
+        throw new IllegalArgumentException("query has no VALUES (...) clause: " + query);
+    }
+
+    private static ValuesTemplate parse(String query, int open) {
+        int depth = 0;
+        int width = 0;
+        char quote = 0;
+        for (int i = open; i < query.length(); ++i) {
+            final char c = query.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '?') {
+                ++width;
+            } else if (c == '(') {
+                ++depth;
+            } else if (c == ')' && --depth == 0) {
+                if (width == 0)
+                    throw new IllegalArgumentException("VALUES clause has no parameters: " + query);
+                return new ValuesTemplate(query.substring(0, open), query.substring(open, i + 1), query.substring(i + 1), width);
+            }
+        }
+        throw new IllegalArgumentException("unbalanced VALUES clause: " + query);
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    String render(int rows) {
+        String result = rendered.get(rows);
+        if (result == null) {
+            final StringBuilder builder = new StringBuilder(prefix.length() + (tuple.length() + 2) * rows + suffix.length());
+            builder.append(prefix).append(tuple);
+            for (int i = 1; i < rows; ++i)
+                builder.append(", ").append(tuple);
+            rendered.put(rows, result = builder.append(suffix).toString());
+        }
+        return result;
+    }
+}
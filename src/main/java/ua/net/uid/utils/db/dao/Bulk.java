@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db.dao;
+
+import ua.net.uid.utils.db.Batch;
+import ua.net.uid.utils.db.Database;
+import ua.net.uid.utils.db.Session;
+import ua.net.uid.utils.db.query.Condition;
+import ua.net.uid.utils.db.query.QueryBuilder;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+final class Bulk {
+    private Bulk() {
+    }
+
+    static <PK> List<List<PK>> chunks(Collection<PK> keys, int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("chunk size must be positive");
+        final List<PK> unique = new ArrayList<>(new LinkedHashSet<>(keys));
+        final List<List<PK>> chunks = new ArrayList<>((unique.size() + size - 1) / size);
+        for (int from = 0; from < unique.size(); from += size) {
+            final List<PK> chunk = new ArrayList<>(unique.subList(from, Math.min(unique.size(), from + size)));
+            // pad to a power of two so that only a few distinct statements are ever prepared
+            int padded = Integer.highestOneBit(chunk.size());
+            if (padded < chunk.size()) padded <<= 1;
+            padded = Math.min(padded, size);
+            final PK last = chunk.get(chunk.size() - 1);
+            while (chunk.size() < padded) chunk.add(last);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    static <T extends Entity<PK>, PK extends Serializable> void fetch(
+            DAOBase<T, PK> dao, Session session, List<PK> keys, Map<PK, T> target
+    ) throws SQLException {
+        new QueryBuilder()
+                .append("SELECT * FROM ").append(dao.getTableName())
+                .append(" WHERE ", dao.getPrimaryConditions(keys))
+                .on(session).foreach(dao.getFetcher(), item -> target.put(item.getPrimaryKey(), item));
+    }
+
+    static <T extends Entity<PK>, PK extends Serializable> void fetch(
+            DAOBase<T, PK> dao, List<List<PK>> chunks, Map<PK, T> target, Executor executor
+    ) throws SQLException {
+        // chunks of a transaction or sub-session would share its single connection across threads
+        if (executor == null || chunks.size() < 2 || !(dao.getSession() instanceof Database)) {
+            dao.getSession().block(session -> {
+                for (List<PK> chunk : chunks)
+                    fetch(dao, session, chunk, target);
+            });
+        } else {
+            final Map<PK, T> concurrent = new ConcurrentHashMap<>();
+            final CompletableFuture<?>[] futures = new CompletableFuture<?>[chunks.size()];
+            for (int i = 0; i < futures.length; ++i) {
+                final List<PK> chunk = chunks.get(i);
+                futures[i] = CompletableFuture.runAsync(() -> {
+                    try {
+                        fetch(dao, dao.getSession(), chunk, concurrent);
+                    } catch (SQLException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, executor);
+            }
+            try {
+                CompletableFuture.allOf(futures).join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof SQLException) throw (SQLException) ex.getCause();
+                throw ex;
+            }
+            target.putAll(concurrent);
+        }
+    }
+
+    static List<Condition> ranges(DAOBase<?, ?> dao, Condition condition, int partitions) throws SQLException {
+        if (partitions <= 0)
+            throw new IllegalArgumentException("partitions must be positive");
+        final String[] keys = keys(dao, "parallelForeach");
+        if (keys.length != 1)
+            throw new UnsupportedOperationException("range partitioning needs a single primary column in " + dao.getTableName());
+        final String key = keys[0];
+        final long[] bounds = new QueryBuilder()
+                .append("SELECT MIN(").append(key).append("), MAX(").append(key).append(") FROM ").append(dao.getTableName())
+                .append(" WHERE ", condition)
+                .on(dao.getSession()).select(result -> {
+                    if (!result.next()) return null;
+                    final long min = result.getLong(1);
+                    return result.wasNull() ? null : new long[]{min, result.getLong(2)};
+                });
+        final List<Condition> ranges = new ArrayList<>(partitions);
+        if (bounds == null) return ranges;
+        long step;
+        try {
+            step = Math.addExact(Math.subtractExact(bounds[1], bounds[0]), partitions) / partitions;
+        } catch (ArithmeticException ex) {
+            // the key range is wider than a long, so divide the bounds before subtracting
+            step = bounds[1] / partitions - bounds[0] / partitions + 1;
+        }
+        long lower = bounds[0];
+        for (int i = 0; i < partitions; ++i) {
+            long upper;
+            try {
+                upper = Math.addExact(lower, step);
+            } catch (ArithmeticException ex) {
+                upper = Long.MAX_VALUE;
+            }
+            final boolean last = i == partitions - 1 || upper > bounds[1] || upper == Long.MAX_VALUE;
+            // the first and last ranges are open so rows outside the sampled bounds are not lost
+            final Condition range = last
+                    ? (i == 0 ? null : Condition.raw(key + " >= ?", lower))
+                    : (i == 0 ? Condition.raw(key + " < ?", upper) : Condition.raw(key + " >= ? AND " + key + " < ?", lower, upper));
+            ranges.add(Condition.and(condition, range));
+            if (last) break;
+            lower = upper;
+        }
+        return ranges;
+    }
+
+    static String[] keys(DAOBase<?, ?> dao, String operation) {
+        return require(dao.getPrimaryColumns(), dao, "getPrimaryColumns()", operation);
+    }
+
+    static String[] columns(DAOBase<?, ?> dao, String operation) {
+        return require(dao.getColumns(), dao, "getColumns()", operation);
+    }
+
+    static <T extends Entity<PK>, PK extends Serializable> Object[] values(DAOBase<T, PK> dao, T item, String operation) {
+        return require(dao.getValues(item), dao, "getValues()", operation);
+    }
+
+    private static <V> V require(V value, DAOBase<?, ?> dao, String hook, String operation) {
+        if (value == null)
+            throw new UnsupportedOperationException(operation + " needs " + dao.getClass().getName() + " to override " + hook);
+        return value;
+    }
+
+    static <T> long write(Batch batch, Collection<T> items, Function<T, Object[]> values) throws SQLException {
+        try {
+            // in autocommit mode every chunk commits on its own and a failed chunk is rolled back as a whole
+            batch.commit(true);
+            for (T item : items)
+                batch.values(values.apply(item));
+            return batch.update();
+        } finally {
+            batch.close();
+        }
+    }
+
+    static Object[] concat(Object[] first, Object[] second) {
+        final Object[] result = new Object[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    static String insert(String table, String[] keys, String[] columns) {
+        final StringBuilder builder = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        final int count = keys.length + columns.length;
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) builder.append(", ");
+            builder.append(i < keys.length ? keys[i] : columns[i - keys.length]);
+        }
+        builder.append(") VALUES (");
+        for (int i = 0; i < count; ++i)
+            builder.append(i == 0 ? "?" : ", ?");
+        return builder.append(')').toString();
+    }
+
+    static String update(String table, String[] keys, String[] columns) {
+        final StringBuilder builder = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        for (int i = 0; i < columns.length; ++i) {
+            if (i > 0) builder.append(", ");
+            builder.append(columns[i]).append(" = ?");
+        }
+        return where(builder, keys).toString();
+    }
+
+    static String delete(String table, String[] keys) {
+        return where(new StringBuilder("DELETE FROM ").append(table), keys).toString();
+    }
+
+    private static StringBuilder where(StringBuilder builder, String[] keys) {
+        builder.append(" WHERE ");
+        for (int i = 0; i < keys.length; ++i) {
+            if (i > 0) builder.append(" AND ");
+            builder.append(keys[i]).append(" = ?");
+        }
+        return builder;
+    }
+}
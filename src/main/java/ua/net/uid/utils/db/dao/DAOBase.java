@@ -15,6 +15,7 @@
  */
 package ua.net.uid.utils.db.dao;
 
+import ua.net.uid.utils.db.Batch;
 import ua.net.uid.utils.db.Fetcher;
 import ua.net.uid.utils.db.Outcome;
 import ua.net.uid.utils.db.query.Condition;
@@ -23,20 +24,64 @@ import ua.net.uid.utils.db.query.QueryBuilder;
 
 import java.io.Serializable;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 import ua.net.uid.utils.db.Processor;
+import ua.net.uid.utils.db.Session;
 
 public interface DAOBase<T extends Entity<PK>, PK extends Serializable> extends DAO {
     String getTableName();
 
     Condition getPrimaryCondition(PK key);
 
+    default Condition getPrimaryConditions(Collection<PK> keys) {
+        final String[] columns = getPrimaryColumns();
+        if (columns != null && columns.length == 1)
+            return Condition.in(columns[0], keys);
+        // composite or undeclared keys fall back to one predicate per key
+        final Condition[] conditions = new Condition[keys.size()];
+        int index = 0;
+        for (PK key : keys)
+            conditions[index++] = getPrimaryCondition(key);
+        return Condition.or(conditions);
+    }
+
     default Order getDefaultOrder() {
         return null;
     }
 
     Fetcher<T> getFetcher();
 
+    // the column hooks are optional: only bulk writes and range scans need them and report when they are missing
+    default String[] getPrimaryColumns() {
+        return null;
+    }
+
+    default String[] getColumns() {
+        return null;
+    }
+
+    default Object[] getPrimaryValues(PK key) {
+        return new Object[]{key};
+    }
+
+    default Object[] getValues(T item) {
+        return null;
+    }
+
+    default int getBatchSize() {
+        return 1000;
+    }
+
+    default boolean isServerSide() {
+        return false;
+    }
+
     default T get(PK key) throws SQLException {
         return getBy(getPrimaryCondition(key));
     }
@@ -49,6 +94,21 @@ public interface DAOBase<T extends Entity<PK>, PK extends Serializable> extends
                 .on(getSession()).scalar(getFetcher());
     }
 
+    default Map<PK, T> getAll(Collection<PK> keys) throws SQLException {
+        return getAll(keys, 256, null);
+    }
+
+    default Map<PK, T> getAll(Collection<PK> keys, int chunkSize) throws SQLException {
+        return getAll(keys, chunkSize, null);
+    }
+
+    default Map<PK, T> getAll(Collection<PK> keys, int chunkSize, Executor executor) throws SQLException {
+        final Map<PK, T> result = new HashMap<>();
+        if (keys != null && !keys.isEmpty())
+            Bulk.fetch(this, Bulk.chunks(keys, chunkSize), result, executor);
+        return result;
+    }
+
     default long countAll() throws SQLException {
         return getSession().query("SELECT COUNT(*) FROM " + getTableName()).select(Outcome.FIRST_LONG);
     }
@@ -70,7 +130,18 @@ public interface DAOBase<T extends Entity<PK>, PK extends Serializable> extends
         new QueryBuilder()
                 .append("SELECT * FROM ").append(getTableName())
                 .append(order)
-                .on(getSession()).foreach(getFetcher(), callback);
+                .on(getSession()).serverSide(isServerSide()).foreach(getFetcher(), callback);
+    }
+
+    default Stream<T> streamAll() throws SQLException {
+        return streamAll(getDefaultOrder());
+    }
+
+    default Stream<T> streamAll(Order order) throws SQLException {
+        return new QueryBuilder()
+                .append("SELECT * FROM ").append(getTableName())
+                .append(order)
+                .on(getSession()).serverSide(isServerSide()).stream(getFetcher());
     }
 
     default List<T> findAll(long limit, long offset) throws SQLException {
@@ -83,7 +154,9 @@ public interface DAOBase<T extends Entity<PK>, PK extends Serializable> extends
 
     default List<T> findAll(Order order, long limit, long offset) throws SQLException {
         return new QueryBuilder().append("SELECT * FROM ").append(getTableName())
-                .append(order).on(getSession()).list(getFetcher());
+                .append(order)
+                .append(" LIMIT ? OFFSET ?", limit, offset)
+                .on(getSession()).list(getFetcher());
     }
     
     default void foreachAll(Processor.Callback<T> callback, Order order, long limit, long offset) throws SQLException {
@@ -91,7 +164,65 @@ public interface DAOBase<T extends Entity<PK>, PK extends Serializable> extends
                 .append("SELECT * FROM ").append(getTableName())
                 .append(order)
                 .append(" LIMIT ? OFFSET ?", limit, offset)
-                .on(getSession()).foreach(getFetcher(), callback);
+                .on(getSession()).serverSide(isServerSide()).foreach(getFetcher(), callback);
+    }
+
+    default Page<T> findPage(Order order, int limit, Object... after) throws SQLException {
+        return findPage(null, order, limit, after);
+    }
+
+    default Page<T> findPage(Condition condition, Order order, int limit, Object... after) throws SQLException {
+        if (order == null || order.size() == 0)
+            throw new IllegalArgumentException("keyset pagination requires order");
+        if (limit <= 0)
+            throw new IllegalArgumentException("limit must be positive");
+        final Fetcher<T> fetcher = getFetcher();
+        return new QueryBuilder()
+                .append("SELECT *").append(order.selection())
+                .append(" FROM ").append(getTableName())
+                .append(" WHERE ", Condition.and(condition, order.after(after)))
+                .append(order)
+                .append(" LIMIT ?", limit + 1)
+                .on(getSession()).select(result -> {
+                    final List<T> items = new ArrayList<>(limit);
+                    Object[] next = null;
+                    while (result.next()) {
+                        if (items.size() == limit) return new Page<>(items, next);
+                        items.add(fetcher.fetch(result));
+                        if (items.size() == limit) next = order.keys(result);
+                    }
+                    return new Page<>(items, null);
+                });
+    }
+
+    default void foreachAllKeyset(Processor.Callback<T> callback, int pageSize) throws SQLException {
+        foreachAllKeyset(callback, getDefaultOrder(), pageSize);
+    }
+
+    default void foreachAllKeyset(Processor.Callback<T> callback, Order order, int pageSize) throws SQLException {
+        foreachByKeyset(callback, null, order, pageSize);
+    }
+
+    default void foreachByKeyset(Processor.Callback<T> callback, Condition condition, Order order, int pageSize) throws SQLException {
+        Object[] after = null;
+        do {
+            final Page<T> page = findPage(condition, order, pageSize, after);
+            for (T item : page.getItems())
+                callback.call(item);
+            after = page.getNext();
+        } while (after != null);
+    }
+
+    default Scan parallelForeach(Processor.Callback<T> callback, int partitions) throws SQLException {
+        return parallelForeach(callback, null, partitions);
+    }
+
+    default Scan parallelForeach(Processor.Callback<T> callback, Condition condition, int partitions) throws SQLException {
+        return parallelForeach(callback, Bulk.ranges(this, condition, partitions));
+    }
+
+    default Scan parallelForeach(Processor.Callback<T> callback, List<Condition> partitions) {
+        return Scan.start(this, callback, partitions);
     }
 
     default long countBy(Condition condition) throws SQLException {
@@ -123,7 +254,19 @@ public interface DAOBase<T extends Entity<PK>, PK extends Serializable> extends
                 .append("SELECT * FROM ").append(getTableName())
                 .append(" WHERE ", condition)
                 .append(order)
-                .on(getSession()).foreach(getFetcher(), callback);
+                .on(getSession()).serverSide(isServerSide()).foreach(getFetcher(), callback);
+    }
+
+    default Stream<T> streamBy(Condition condition) throws SQLException {
+        return streamBy(condition, getDefaultOrder());
+    }
+
+    default Stream<T> streamBy(Condition condition, Order order) throws SQLException {
+        return new QueryBuilder()
+                .append("SELECT * FROM ").append(getTableName())
+                .append(" WHERE ", condition)
+                .append(order)
+                .on(getSession()).serverSide(isServerSide()).stream(getFetcher());
     }
 
     default List<T> findBy(Condition condition, long limit, long offset) throws SQLException {
@@ -138,8 +281,8 @@ public interface DAOBase<T extends Entity<PK>, PK extends Serializable> extends
         return new QueryBuilder()
                 .append("SELECT * FROM ").append(getTableName())
                 .append(" WHERE ", condition)
-                .append(" LIMIT ? OFFSET ?", limit, offset)
                 .append(order)
+                .append(" LIMIT ? OFFSET ?", limit, offset)
                 .on(getSession()).list(getFetcher());
     }
     
@@ -147,9 +290,9 @@ public interface DAOBase<T extends Entity<PK>, PK extends Serializable> extends
         new QueryBuilder()
                 .append("SELECT * FROM ").append(getTableName())
                 .append(" WHERE ", condition)
-                .append(" LIMIT ? OFFSET ?", limit, offset)
                 .append(order)
-                .on(getSession()).foreach(getFetcher(), callback);
+                .append(" LIMIT ? OFFSET ?", limit, offset)
+                .on(getSession()).serverSide(isServerSide()).foreach(getFetcher(), callback);
     }
 
     boolean insert(T item) throws SQLException;
@@ -170,4 +313,37 @@ public interface DAOBase<T extends Entity<PK>, PK extends Serializable> extends
     default boolean delete(T item) throws SQLException {
         return delete(item.getPrimaryKey());
     }
+
+    default long insertAll(Collection<T> items) throws SQLException {
+        if (items == null || items.isEmpty()) return 0;
+        final Batch batch = getSession().batch(Bulk.insert(getTableName(), Bulk.keys(this, "insertAll"), Bulk.columns(this, "insertAll")));
+        return Bulk.write(batch.chunk(getBatchSize()), items, item -> Bulk.concat(getPrimaryValues(item.getPrimaryKey()), Bulk.values(this, item, "insertAll")));
+    }
+
+    default List<PK> insertAll(Collection<T> items, Fetcher<PK> keys) throws SQLException {
+        final List<PK> result = new ArrayList<>(items == null ? 0 : items.size());
+        if (items == null || items.isEmpty()) return result;
+        final Batch batch = getSession().batch(Bulk.insert(getTableName(), new String[0], Bulk.columns(this, "insertAll")));
+        Bulk.write(batch.chunk(getBatchSize()).keys(keys, result::add), items, item -> Bulk.values(this, item, "insertAll"));
+        return result;
+    }
+
+    default long updateAll(Collection<T> items) throws SQLException {
+        if (items == null || items.isEmpty()) return 0;
+        final Batch batch = getSession().batch(Bulk.update(getTableName(), Bulk.keys(this, "updateAll"), Bulk.columns(this, "updateAll")));
+        return Bulk.write(batch.chunk(getBatchSize()), items, item -> Bulk.concat(Bulk.values(this, item, "updateAll"), getPrimaryValues(item.getPrimaryKey())));
+    }
+
+    default long upsertAll(Collection<T> items) throws SQLException {
+        if (items == null || items.isEmpty()) return 0;
+        final Session session = getSession();
+        final Batch batch = session.batch(session.getDialect().upsert(getTableName(), Bulk.keys(this, "upsertAll"), Bulk.columns(this, "upsertAll")));
+        return Bulk.write(batch.chunk(getBatchSize()), items, item -> Bulk.concat(getPrimaryValues(item.getPrimaryKey()), Bulk.values(this, item, "upsertAll")));
+    }
+
+    default long deleteAll(Collection<PK> keys) throws SQLException {
+        if (keys == null || keys.isEmpty()) return 0;
+        final Batch batch = getSession().batch(Bulk.delete(getTableName(), Bulk.keys(this, "deleteAll")));
+        return Bulk.write(batch.chunk(getBatchSize()), keys, this::getPrimaryValues);
+    }
 }
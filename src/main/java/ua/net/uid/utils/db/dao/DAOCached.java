@@ -0,0 +1,210 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db.dao;
+
+import ua.net.uid.utils.db.Fetcher;
+import ua.net.uid.utils.db.Session;
+import ua.net.uid.utils.db.Transaction;
+import ua.net.uid.utils.db.query.Condition;
+import ua.net.uid.utils.db.query.Order;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+public class DAOCached<T extends Entity<PK>, PK extends Serializable> implements DAOBase<T, PK> {
+    private final DAOBase<T, PK> dao;
+    private final EntityCache<PK, T> cache;
+
+    public DAOCached(DAOBase<T, PK> dao, EntityCache<PK, T> cache) {
+        this.dao = dao;
+        this.cache = cache;
+    }
+
+    public DAOCached(DAOBase<T, PK> dao, int capacity, long ttlMillis) {
+        this(dao, new EntityCache<>(capacity, ttlMillis));
+    }
+
+    public EntityCache<PK, T> getCache() {
+        return cache;
+    }
+
+    @Override
+    public Session getSession() {
+        return dao.getSession();
+    }
+
+    @Override
+    public String getTableName() {
+        return dao.getTableName();
+    }
+
+    @Override
+    public Condition getPrimaryCondition(PK key) {
+        return dao.getPrimaryCondition(key);
+    }
+
+    @Override
+    public Condition getPrimaryConditions(Collection<PK> keys) {
+        return dao.getPrimaryConditions(keys);
+    }
+
+    @Override
+    public Order getDefaultOrder() {
+        return dao.getDefaultOrder();
+    }
+
+    @Override
+    public Fetcher<T> getFetcher() {
+        return dao.getFetcher();
+    }
+
+    @Override
+    public String[] getPrimaryColumns() {
+        return dao.getPrimaryColumns();
+    }
+
+    @Override
+    public String[] getColumns() {
+        return dao.getColumns();
+    }
+
+    @Override
+    public Object[] getPrimaryValues(PK key) {
+        return dao.getPrimaryValues(key);
+    }
+
+    @Override
+    public Object[] getValues(T item) {
+        return dao.getValues(item);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return dao.getBatchSize();
+    }
+
+    @Override
+    public boolean isServerSide() {
+        return dao.isServerSide();
+    }
+
+    @Override
+    public T get(PK key) throws SQLException {
+        return key == null ? null : cache.get(key, dao::get);
+    }
+
+    @Override
+    public Map<PK, T> getAll(Collection<PK> keys, int chunkSize, Executor executor) throws SQLException {
+        if (keys == null || keys.isEmpty()) return new HashMap<>();
+        return cache.getAll(keys, missing -> dao.getAll(missing, chunkSize, executor));
+    }
+
+    @Override
+    public boolean insert(T item) throws SQLException {
+        try {
+            return dao.insert(item);
+        } finally {
+            evict(item.getPrimaryKey());
+        }
+    }
+
+    @Override
+    public boolean update(T item, PK key) throws SQLException {
+        try {
+            return dao.update(item, key);
+        } finally {
+            evict(key);
+            evict(item.getPrimaryKey());
+        }
+    }
+
+    @Override
+    public boolean delete(PK key) throws SQLException {
+        try {
+            return dao.delete(key);
+        } finally {
+            evict(key);
+        }
+    }
+
+    @Override
+    public long insertAll(Collection<T> items) throws SQLException {
+        try {
+            return dao.insertAll(items);
+        } finally {
+            invalidate(items);
+        }
+    }
+
+    @Override
+    public List<PK> insertAll(Collection<T> items, Fetcher<PK> keys) throws SQLException {
+        final List<PK> result = dao.insertAll(items, keys);
+        for (PK key : result)
+            evict(key);
+        return result;
+    }
+
+    @Override
+    public long updateAll(Collection<T> items) throws SQLException {
+        try {
+            return dao.updateAll(items);
+        } finally {
+            invalidate(items);
+        }
+    }
+
+    @Override
+    public long upsertAll(Collection<T> items) throws SQLException {
+        try {
+            return dao.upsertAll(items);
+        } finally {
+            invalidate(items);
+        }
+    }
+
+    @Override
+    public long deleteAll(Collection<PK> keys) throws SQLException {
+        try {
+            return dao.deleteAll(keys);
+        } finally {
+            if (keys != null) {
+                for (PK key : keys)
+                    evict(key);
+            }
+        }
+    }
+
+    private void invalidate(Collection<T> items) {
+        if (items != null) {
+            for (T item : items)
+                evict(item.getPrimaryKey());
+        }
+    }
+
+    private void evict(PK key) {
+        if (key == null) return;
+        cache.invalidate(key);
+        // a concurrent reader may cache the old row again before the transaction commits
+        final Session session = getSession();
+        if (session instanceof Transaction)
+            ((Transaction) session).afterCommit(() -> cache.invalidate(key));
+    }
+}
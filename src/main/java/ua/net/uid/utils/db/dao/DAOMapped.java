@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db.dao;
+
+import ua.net.uid.utils.db.Fetcher;
+import ua.net.uid.utils.db.Outcome;
+import ua.net.uid.utils.db.Session;
+import ua.net.uid.utils.db.query.Condition;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.Collection;
+
+public abstract class DAOMapped<T extends Entity<PK>, PK extends Serializable> extends DAOAbstract<T, PK> {
+    private final Mapper<T> mapper;
+    private final String key;
+
+    public DAOMapped(Session session, Class<T> type) {
+        super(session);
+        this.mapper = Mapper.of(type);
+        this.key = mapper.getPrimaryColumns()[0];
+    }
+
+    public Mapper<T> getMapper() {
+        return mapper;
+    }
+
+    @Override
+    public String getTableName() {
+        return mapper.getTable();
+    }
+
+    @Override
+    public Condition getPrimaryCondition(PK key) {
+        return Condition.raw(this.key + " = ?", key);
+    }
+
+    @Override
+    public Condition getPrimaryConditions(Collection<PK> keys) {
+        return Condition.in(key, keys);
+    }
+
+    @Override
+    public Fetcher<T> getFetcher() {
+        return mapper.getFetcher();
+    }
+
+    @Override
+    public String[] getPrimaryColumns() {
+        return mapper.getPrimaryColumns();
+    }
+
+    @Override
+    public String[] getColumns() {
+        return mapper.getColumns();
+    }
+
+    @Override
+    public Object[] getValues(T item) {
+        return mapper.getValues(item);
+    }
+
+    @Override
+    public boolean insert(T item) throws SQLException {
+        if (mapper.isGenerated() && item.getPrimaryKey() == null) {
+            final Object generated = getSession().query(mapper.getInsert(), mapper.getInsertValues(item)).update(Outcome.FIRST_OBJECT);
+            if (generated == null) return false;
+            mapper.setPrimaryValue(item, generated);
+            return true;
+        }
+        return getSession().query(mapper.getKeyedInsert(), mapper.getKeyedInsertValues(item)).update() > 0;
+    }
+
+    @Override
+    public boolean update(T item, PK key) throws SQLException {
+        return getSession().query(mapper.getUpdate(), mapper.getUpdateValues(item, key)).update() > 0;
+    }
+}
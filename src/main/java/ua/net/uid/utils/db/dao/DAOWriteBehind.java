@@ -0,0 +1,339 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db.dao;
+
+import ua.net.uid.utils.db.Fetcher;
+import ua.net.uid.utils.db.Session;
+import ua.net.uid.utils.db.query.Condition;
+import ua.net.uid.utils.db.query.Order;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class DAOWriteBehind<T extends Entity<PK>, PK extends Serializable> implements DAOBase<T, PK>, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(DAOWriteBehind.class.getName());
+
+    private final DAOBase<T, PK> dao;
+    private final int capacity;
+    private final int chunkSize;
+    private final long linger;
+    private final ArrayDeque<T> queue;
+    private final Thread flusher;
+    private volatile Writer<T> writer;
+    private volatile ErrorHandler<T> errors = (item, error) -> LOGGER.log(Level.WARNING, "write-behind insert failed", error);
+    private long enqueued = 0;
+    private long written = 0;
+    private long failed = 0;
+    private long urgent = 0;
+    private boolean closed = false;
+    private Throwable failure = null;
+
+    public DAOWriteBehind(DAOBase<T, PK> dao, int capacity, int chunkSize, long lingerMillis) {
+        if (capacity <= 0 || chunkSize <= 0 || lingerMillis < 0)
+            throw new IllegalArgumentException("invalid write-behind configuration");
+        this.dao = dao;
+        this.capacity = capacity;
+        // a chunk must fit one executeBatch so that a failed chunk leaves nothing behind for the row-by-row retry
+        this.chunkSize = Math.min(chunkSize, Math.min(capacity, dao.getBatchSize()));
+        this.linger = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.queue = new ArrayDeque<>(Math.min(capacity, 1024));
+        this.writer = dao::insertAll;
+        this.flusher = new Thread(this::drain, "write-behind-" + dao.getTableName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public DAOWriteBehind<T, PK> writer(Writer<T> writer) {
+        this.writer = writer;
+        return this;
+    }
+
+    public DAOWriteBehind<T, PK> onError(ErrorHandler<T> errors) {
+        this.errors = errors;
+        return this;
+    }
+
+    public synchronized int getPending() {
+        return queue.size();
+    }
+
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    @Override
+    public boolean insert(T item) throws SQLException {
+        try {
+            return offer(item, -1, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for write-behind buffer", ex);
+        }
+    }
+
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        if (item == null)
+            throw new IllegalArgumentException("item is null");
+        long remaining = timeout < 0 ? Long.MAX_VALUE : unit.toNanos(timeout);
+        final long deadline = System.nanoTime() + remaining;
+        synchronized (this) {
+            while (queue.size() >= capacity && !closed && failure == null) {
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                if (timeout >= 0) remaining = deadline - System.nanoTime();
+            }
+            if (failure != null)
+                throw new IllegalStateException("write-behind flusher has failed", failure);
+            if (closed)
+                throw new IllegalStateException("write-behind buffer is closed");
+            queue.addLast(item);
+            ++enqueued;
+            if (queue.size() == 1 || queue.size() >= chunkSize) notifyAll();
+        }
+        return true;
+    }
+
+    public void flush() throws SQLException {
+        synchronized (this) {
+            final long target = enqueued;
+            urgent = Math.max(urgent, target);
+            notifyAll();
+            try {
+                while (written + failed < target && failure == null && flusher.isAlive())
+                    wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("interrupted while flushing write-behind buffer", ex);
+            }
+            if (written + failed < target)
+                throw new SQLException("write-behind flusher has failed with " + (target - written - failed) + " rows unwritten", failure);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            urgent = Long.MAX_VALUE;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (failure != null && written + failed < enqueued)
+                throw new IllegalStateException("write-behind flusher has failed with " + (enqueued - written - failed) + " rows unwritten", failure);
+        }
+    }
+
+    private void drain() {
+        final List<T> chunk = new ArrayList<>(chunkSize);
+        try {
+            while (take(chunk)) {
+                final Writer<T> current = writer;
+                int failures = 0;
+                try {
+                    current.write(chunk);
+                } catch (SQLException | RuntimeException ex) {
+                    failures = fallback(current, chunk);
+                }
+                synchronized (this) {
+                    written += chunk.size() - failures;
+                    failed += failures;
+                    notifyAll();
+                }
+                chunk.clear();
+            }
+        } catch (Error ex) {
+            // the thread dies here, so producers and flush() must see why instead of waiting forever
+            LOGGER.log(Level.SEVERE, "write-behind flusher failed", ex);
+            synchronized (this) {
+                failure = ex;
+                notifyAll();
+            }
+        } finally {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized boolean take(List<T> chunk) {
+        try {
+            while (queue.isEmpty()) {
+                if (closed) return false;
+                wait();
+            }
+            // linger for a fuller chunk unless someone is waiting on flush() or close()
+            final long deadline = System.nanoTime() + linger;
+            long remaining = linger;
+            while (queue.size() < chunkSize && urgent <= written + failed && remaining > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        } catch (InterruptedException ex) {
+            if (queue.isEmpty()) return false;
+        }
+        while (chunk.size() < chunkSize && !queue.isEmpty())
+            chunk.add(queue.pollFirst());
+        notifyAll();
+        return true;
+    }
+
+    private int fallback(Writer<T> current, List<T> chunk) {
+        // the batch is all-or-nothing for most drivers, so retry row by row through the same writer to isolate bad items
+        int failures = 0;
+        for (T item : chunk) {
+            try {
+                current.write(Collections.singletonList(item));
+            } catch (SQLException | RuntimeException ex) {
+                ++failures;
+                try {
+                    errors.failed(item, ex);
+                } catch (RuntimeException handler) {
+                    LOGGER.log(Level.WARNING, "write-behind error handler failed", handler);
+                }
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public Session getSession() {
+        return dao.getSession();
+    }
+
+    @Override
+    public String getTableName() {
+        return dao.getTableName();
+    }
+
+    @Override
+    public Condition getPrimaryCondition(PK key) {
+        return dao.getPrimaryCondition(key);
+    }
+
+    @Override
+    public Condition getPrimaryConditions(Collection<PK> keys) {
+        return dao.getPrimaryConditions(keys);
+    }
+
+    @Override
+    public Order getDefaultOrder() {
+        return dao.getDefaultOrder();
+    }
+
+    @Override
+    public Fetcher<T> getFetcher() {
+        return dao.getFetcher();
+    }
+
+    @Override
+    public String[] getPrimaryColumns() {
+        return dao.getPrimaryColumns();
+    }
+
+    @Override
+    public String[] getColumns() {
+        return dao.getColumns();
+    }
+
+    @Override
+    public Object[] getPrimaryValues(PK key) {
+        return dao.getPrimaryValues(key);
+    }
+
+    @Override
+    public Object[] getValues(T item) {
+        return dao.getValues(item);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return dao.getBatchSize();
+    }
+
+    @Override
+    public boolean isServerSide() {
+        return dao.isServerSide();
+    }
+
+    @Override
+    public boolean update(T item, PK key) throws SQLException {
+        flush();
+        return dao.update(item, key);
+    }
+
+    @Override
+    public boolean delete(PK key) throws SQLException {
+        flush();
+        return dao.delete(key);
+    }
+
+    @Override
+    public long insertAll(Collection<T> items) throws SQLException {
+        flush();
+        return dao.insertAll(items);
+    }
+
+    @Override
+    public List<PK> insertAll(Collection<T> items, Fetcher<PK> keys) throws SQLException {
+        flush();
+        return dao.insertAll(items, keys);
+    }
+
+    @Override
+    public long updateAll(Collection<T> items) throws SQLException {
+        flush();
+        return dao.updateAll(items);
+    }
+
+    @Override
+    public long upsertAll(Collection<T> items) throws SQLException {
+        flush();
+        return dao.upsertAll(items);
+    }
+
+    @Override
+    public long deleteAll(Collection<PK> keys) throws SQLException {
+        flush();
+        return dao.deleteAll(keys);
+    }
+
+    public interface Writer<T> {
+        void write(List<T> chunk) throws SQLException;
+    }
+
+    public interface ErrorHandler<T> {
+        void failed(T item, Exception error);
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db.dao;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class EntityCache<K, V> {
+    private final Segment<K, V>[] segments;
+    private final long ttl;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder loadTime = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public EntityCache(int capacity) {
+        this(capacity, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    public EntityCache(int capacity, long ttlMillis) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        if (ttlMillis < 0)
+            throw new IllegalArgumentException("ttl must not be negative");
+        final int count = Integer.highestOneBit(Math.max(1, Math.min(16, capacity / 64)));
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+        for (int i = 0; i < count; ++i)
+            segments[i] = new Segment<>((capacity + count - 1) / count);
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    public V get(K key, Loader<K, V> loader) throws SQLException {
+        V value = getIfPresent(key);
+        if (value != null) return value;
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (existing != null) return await(existing);
+        final long start = System.nanoTime();
+        try {
+            value = loader.load(key);
+        } catch (Throwable ex) {
+            // errors have to release the waiters as well, otherwise they block forever
+            failures.increment();
+            loading.remove(key, future);
+            future.completeExceptionally(ex);
+            throw ex;
+        }
+        loads.increment();
+        loadTime.add(System.nanoTime() - start);
+        final Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            if (loading.remove(key, future) && value != null)
+                store(segment, key, value);
+        }
+        future.complete(value);
+        return value;
+    }
+
+    public Map<K, V> getAll(Collection<K> keys, MultiLoader<K, V> loader) throws SQLException {
+        final Map<K, V> result = new HashMap<>();
+        final Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+        final Map<K, CompletableFuture<V>> pending = new HashMap<>();
+        for (K key : keys) {
+            if (key == null || owned.containsKey(key) || pending.containsKey(key)) continue;
+            final V value = getIfPresent(key);
+            if (value != null) {
+                result.put(key, value);
+                continue;
+            }
+            // registered like a single load, so an invalidation during the bulk load keeps its value out of the cache
+            final CompletableFuture<V> future = new CompletableFuture<>();
+            final CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+            if (existing != null) {
+                pending.put(key, existing);
+            } else {
+                owned.put(key, future);
+            }
+        }
+        if (!owned.isEmpty()) {
+            final long start = System.nanoTime();
+            final Map<K, V> loaded;
+            try {
+                loaded = loader.load(owned.keySet());
+            } catch (Throwable ex) {
+                failures.increment();
+                for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+                    loading.remove(entry.getKey(), entry.getValue());
+                    entry.getValue().completeExceptionally(ex);
+                }
+                throw ex;
+            }
+            loads.increment();
+            loadTime.add(System.nanoTime() - start);
+            for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+                final K key = entry.getKey();
+                final V value = loaded.get(key);
+                final Segment<K, V> segment = segment(key);
+                synchronized (segment) {
+                    if (loading.remove(key, entry.getValue()) && value != null)
+                        store(segment, key, value);
+                }
+                entry.getValue().complete(value);
+                if (value != null) result.put(key, value);
+            }
+        }
+        for (Map.Entry<K, CompletableFuture<V>> entry : pending.entrySet()) {
+            final V value = await(entry.getValue());
+            if (value != null) result.put(entry.getKey(), value);
+        }
+        return result;
+    }
+
+    public V getIfPresent(K key) {
+        final Segment<K, V> segment = segment(key);
+        final V value;
+        synchronized (segment) {
+            value = segment.get(key, System.nanoTime());
+        }
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        if (value == null) {
+            invalidate(key);
+        } else {
+            final Segment<K, V> segment = segment(key);
+            synchronized (segment) {
+                loading.remove(key);
+                store(segment, key, value);
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        if (key == null) return;
+        final Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            loading.remove(key);
+            segment.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                loading.clear();
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        final long hits = getHits();
+        final long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getLoadFailures() {
+        return failures.sum();
+    }
+
+    public long getAverageLoadTime(TimeUnit unit) {
+        final long loads = getLoads();
+        return loads == 0 ? 0 : unit.convert(loadTime.sum() / loads, TimeUnit.NANOSECONDS);
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private Segment<K, V> segment(K key) {
+        final int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    private void store(Segment<K, V> segment, K key, V value) {
+        evictions.add(segment.put(key, value, ttl > 0 ? System.nanoTime() + ttl : 0));
+    }
+
+    private static <V> V await(CompletableFuture<V> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for entity loading", ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new SQLException(cause);
+        }
+    }
+
+    public interface Loader<K, V> {
+        V load(K key) throws SQLException;
+    }
+
+    public interface MultiLoader<K, V> {
+        Map<K, V> load(Collection<K> keys) throws SQLException;
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expires;
+
+        Entry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return expires != 0 && now - expires > 0;
+        }
+    }
+
+    // segmented LRU: new entries go to probation, entries hit again are promoted to the protected part
+    private static final class Segment<K, V> {
+        private final int capacity;
+        private final int protectedCapacity;
+        private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<K, Entry<V>> protect = new LinkedHashMap<>();
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = Math.max(1, capacity * 4 / 5);
+        }
+
+        V get(K key, long now) {
+            Entry<V> entry = protect.remove(key);
+            if (entry == null) {
+                entry = probation.remove(key);
+                if (entry == null) return null;
+            }
+            if (entry.isExpired(now)) return null;
+            protect.put(key, entry);
+            if (protect.size() > protectedCapacity) {
+                final Iterator<Map.Entry<K, Entry<V>>> iterator = protect.entrySet().iterator();
+                final Map.Entry<K, Entry<V>> eldest = iterator.next();
+                iterator.remove();
+                probation.put(eldest.getKey(), eldest.getValue());
+            }
+            return entry.value;
+        }
+
+        int put(K key, V value, long expires) {
+            final Entry<V> entry = new Entry<>(value, expires);
+            if (protect.containsKey(key)) {
+                protect.put(key, entry);
+                return 0;
+            }
+            probation.remove(key);
+            probation.put(key, entry);
+            int evicted = 0;
+            while (probation.size() + protect.size() > capacity) {
+                final Iterator<Entry<V>> iterator = (probation.isEmpty() ? protect : probation).values().iterator();
+                iterator.next();
+                iterator.remove();
+                ++evicted;
+            }
+            return evicted;
+        }
+
+        void remove(K key) {
+            if (protect.remove(key) == null)
+                probation.remove(key);
+        }
+
+        void clear() {
+            probation.clear();
+            protect.clear();
+        }
+
+        int size() {
+            return probation.size() + protect.size();
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db.dao;
+
+import ua.net.uid.utils.db.RowFetcher;
+import ua.net.uid.utils.db.RowReader;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class Mapper<T> {
+    private static final ClassValue<Mapper<?>> MAPPERS = new ClassValue<Mapper<?>>() {
+        @Override
+        protected Mapper<?> computeValue(Class<?> type) {
+            return new Mapper<>(type);
+        }
+    };
+
+    private static final int READERS = 64;
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    // row access goes through handles composed once per mapper or projection: the leaf handles are bound
+    // inside the composed tree, where the jit treats them as constants, unlike handles read from fields per call
+    private final Class<T> type;
+    private final String table;
+    private final MethodHandle constructor;
+    private final MethodHandle valuesGetter;
+    private final MethodHandle insertGetter;
+    private final MethodHandle keyedGetter;
+    private final ConcurrentHashMap<String, MethodHandle> readers = new ConcurrentHashMap<>();
+    private final Property[] properties;
+    private final Property[] values;
+    private final Property id;
+    private final boolean generated;
+    private final String[] keys;
+    private final String[] columns;
+    private final String insert;
+    private final String keyed;
+    private final String update;
+
+    private Mapper(Class<T> type) {
+        this.type = type;
+        final Table annotation = type.getAnnotation(Table.class);
+        if (annotation == null)
+            throw new IllegalArgumentException(type.getName() + " is not annotated with @Table");
+        this.table = annotation.value();
+        try {
+            final Constructor<T> ctor = type.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            this.constructor = LOOKUP.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalArgumentException(type.getName() + " has no accessible default constructor", ex);
+        }
+        final List<Property> all = new ArrayList<>();
+        final List<Property> data = new ArrayList<>();
+        Property key = null;
+        boolean keyGenerated = false;
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                final Column column = field.getAnnotation(Column.class);
+                final Id identity = field.getAnnotation(Id.class);
+                if ((column == null && identity == null) || Modifier.isStatic(field.getModifiers())) continue;
+                final String name = column != null && !column.value().isEmpty() ? column.value() : field.getName();
+                final Property property = new Property(field, name);
+                all.add(property);
+                if (identity != null) {
+                    if (key != null)
+                        throw new IllegalArgumentException(type.getName() + " declares more than one @Id");
+                    key = property;
+                    keyGenerated = identity.generated();
+                } else {
+                    data.add(property);
+                }
+            }
+        }
+        if (key == null)
+            throw new IllegalArgumentException(type.getName() + " declares no @Id");
+        this.properties = all.toArray(new Property[0]);
+        this.values = data.toArray(new Property[0]);
+        this.id = key;
+        this.generated = keyGenerated;
+        this.keys = new String[]{key.column};
+        this.columns = new String[values.length];
+        for (int i = 0; i < values.length; ++i)
+            columns[i] = values[i].column;
+        this.keyed = Bulk.insert(table, keys, columns);
+        this.insert = generated ? Bulk.insert(table, new String[0], columns) : keyed;
+        this.update = Bulk.update(table, keys, columns);
+        this.valuesGetter = collector(values);
+        final List<Property> inserted = new ArrayList<>(data);
+        inserted.add(0, key);
+        this.keyedGetter = collector(inserted.toArray(new Property[0]));
+        this.insertGetter = generated ? valuesGetter : keyedGetter;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Mapper<T> of(Class<T> type) {
+        return (Mapper<T>) MAPPERS.get(type);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String[] getPrimaryColumns() {
+        return keys.clone();
+    }
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    public String getInsert() {
+        return insert;
+    }
+
+    public String getUpdate() {
+        return update;
+    }
+
+    // an insert that carries an explicit key even when the key is generated
+    String getKeyedInsert() {
+        return keyed;
+    }
+
+    public Object getPrimaryValue(T item) {
+        return id.get(item);
+    }
+
+    public void setPrimaryValue(T item, Object value) {
+        id.set(item, value);
+    }
+
+    public Object[] getValues(T item) {
+        return collect(valuesGetter, item);
+    }
+
+    public Object[] getInsertValues(T item) {
+        return collect(insertGetter, item);
+    }
+
+    Object[] getKeyedInsertValues(T item) {
+        return collect(keyedGetter, item);
+    }
+
+    public Object[] getUpdateValues(T item, Object key) {
+        final Object[] result = Arrays.copyOf(collect(valuesGetter, item), values.length + 1);
+        result[values.length] = key;
+        return result;
+    }
+
+    public RowFetcher<T> getFetcher() {
+        return new MappedFetcher();
+    }
+
+    private static Object[] collect(MethodHandle getter, Object item) {
+        try {
+            return (Object[]) getter.invokeExact(item);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // (Object item)Object[] reading every property into a fresh array
+    private static MethodHandle collector(Property[] properties) {
+        MethodHandle handle = MethodHandles.identity(Object[].class).asCollector(Object[].class, properties.length);
+        for (int i = 0; i < properties.length; ++i)
+            handle = MethodHandles.filterArguments(handle, i, properties[i].getter);
+        return MethodHandles.permuteArguments(handle, MethodType.methodType(Object[].class, Object.class), new int[properties.length]);
+    }
+
+    private MethodHandle reader(int[] indexes) {
+        final String key = Arrays.toString(indexes);
+        MethodHandle reader = readers.get(key);
+        if (reader == null) {
+            if (readers.size() >= READERS) readers.clear();
+            // (ResultSet)Object: create the item, then run each column setter against it in declaration order
+            reader = MethodHandles.dropArguments(MethodHandles.identity(Object.class), 1, ResultSet.class);
+            for (int i = properties.length - 1; i >= 0; --i) {
+                if (indexes[i] > 0)
+                    reader = MethodHandles.foldArguments(reader, properties[i].reader(indexes[i]));
+            }
+            reader = MethodHandles.foldArguments(reader, constructor);
+            readers.put(key, reader);
+        }
+        return reader;
+    }
+
+    private final class MappedFetcher implements RowFetcher<T> {
+        private Binding binding = null;
+
+        @Override
+        public T fetch(ResultSet result) throws SQLException {
+            Binding current = binding;
+            if (current == null || current.result != result)
+                binding = current = new Binding(RowReader.of(result));
+            return current.read();
+        }
+
+        @Override
+        public T fetch(RowReader row) throws SQLException {
+            Binding current = binding;
+            if (current == null || current.result != row.getResultSet())
+                binding = current = new Binding(row);
+            return current.read();
+        }
+    }
+
+    // resolved once per result set rather than per row or per reader
+    private final class Binding {
+        private final ResultSet result;
+        private final MethodHandle reader;
+
+        Binding(RowReader row) {
+            this.result = row.getResultSet();
+            final int[] indexes = new int[properties.length];
+            for (int i = 0; i < properties.length; ++i) {
+                try {
+                    // columns missing from a projection are left at their defaults
+                    indexes[i] = row.index(properties[i].column);
+                } catch (SQLException ignored) {
+                }
+            }
+            this.reader = reader(indexes);
+        }
+
+        @SuppressWarnings("unchecked")
+        T read() throws SQLException {
+            try {
+                return (T) (Object) reader.invokeExact(result);
+            } catch (SQLException | RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new SQLException("unable to map " + type.getName(), ex);
+            }
+        }
+    }
+
+    private enum Kind {BOOLEAN, BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, STRING, DECIMAL, BYTES, TIMESTAMP, DATE, SQL_DATE, TIME, ENUM, OBJECT}
+
+    private static final class Property {
+        private final String column;
+        private final Class<?> type;
+        private final Kind kind;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final MethodHandle generic;
+
+        Property(Field field, String column) {
+            this.column = column;
+            this.type = field.getType();
+            this.kind = kind(type);
+            try {
+                field.setAccessible(true);
+                final MethodHandle get = LOOKUP.unreflectGetter(field);
+                final MethodHandle set = LOOKUP.unreflectSetter(field);
+                this.getter = get.asType(MethodType.methodType(Object.class, Object.class));
+                this.generic = set.asType(MethodType.methodType(void.class, Object.class, Object.class));
+                this.setter = set.asType(MethodType.methodType(void.class, Object.class, type.isPrimitive() ? type : Object.class));
+            } catch (IllegalAccessException | RuntimeException ex) {
+                throw new IllegalArgumentException("unable to access field " + field, ex);
+            }
+        }
+
+        Object get(Object target) {
+            try {
+                return getter.invokeExact(target);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        void set(Object target, Object value) {
+            try {
+                generic.invokeExact(target, convert(value));
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        // (Object target, ResultSet result)void storing the column at index into the field
+        MethodHandle reader(int index) {
+            final MethodHandle value;
+            try {
+                switch (kind) {
+                    case BOOLEAN: value = column("getBoolean", boolean.class); break;
+                    case BYTE: value = column("getByte", byte.class); break;
+                    case SHORT: value = column("getShort", short.class); break;
+                    case INT: value = column("getInt", int.class); break;
+                    case LONG: value = column("getLong", long.class); break;
+                    case FLOAT: value = column("getFloat", float.class); break;
+                    case DOUBLE: value = column("getDouble", double.class); break;
+                    case STRING: value = column("getString", String.class); break;
+                    case DECIMAL: value = column("getBigDecimal", BigDecimal.class); break;
+                    case BYTES: value = column("getBytes", byte[].class); break;
+                    case TIMESTAMP:
+                    case DATE: value = column("getTimestamp", Timestamp.class); break;
+                    case SQL_DATE: value = column("getDate", java.sql.Date.class); break;
+                    case TIME: value = column("getTime", Time.class); break;
+                    case ENUM:
+                        value = MethodHandles.filterReturnValue(column("getString", String.class),
+                                LOOKUP.findStatic(Property.class, "constant", MethodType.methodType(Object.class, Class.class, String.class)).bindTo(type));
+                        break;
+                    default:
+                        value = MethodHandles.filterReturnValue(column("getObject", Object.class),
+                                LOOKUP.findVirtual(Property.class, "convert", MethodType.methodType(Object.class, Object.class)).bindTo(this));
+                }
+            } catch (ReflectiveOperationException ex) {
+                throw new IllegalStateException("unable to map column " + column, ex);
+            }
+            final MethodHandle read = MethodHandles.insertArguments(value, 1, index);
+            return MethodHandles.filterArguments(setter, 1, read.asType(MethodType.methodType(setter.type().parameterType(1), ResultSet.class)));
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        static Object constant(Class<?> type, String name) {
+            return name == null ? null : Enum.valueOf((Class) type, name);
+        }
+
+        private static MethodHandle column(String name, Class<?> type) throws ReflectiveOperationException {
+            return LOOKUP.findVirtual(ResultSet.class, name, MethodType.methodType(type, int.class));
+        }
+
+        Object convert(Object value) {
+            if (!(value instanceof Number) || type.isInstance(value)) return value;
+            final Number number = (Number) value;
+            if (type == Long.class || type == long.class) return number.longValue();
+            if (type == Integer.class || type == int.class) return number.intValue();
+            if (type == Short.class || type == short.class) return number.shortValue();
+            if (type == Byte.class || type == byte.class) return number.byteValue();
+            if (type == Double.class || type == double.class) return number.doubleValue();
+            if (type == Float.class || type == float.class) return number.floatValue();
+            if (type == BigDecimal.class) return new BigDecimal(number.toString());
+            return value;
+        }
+
+        private static Kind kind(Class<?> type) {
+            if (type == boolean.class) return Kind.BOOLEAN;
+            if (type == byte.class) return Kind.BYTE;
+            if (type == short.class) return Kind.SHORT;
+            if (type == int.class) return Kind.INT;
+            if (type == long.class) return Kind.LONG;
+            if (type == float.class) return Kind.FLOAT;
+            if (type == double.class) return Kind.DOUBLE;
+            if (type == String.class) return Kind.STRING;
+            if (type == BigDecimal.class) return Kind.DECIMAL;
+            if (type == byte[].class) return Kind.BYTES;
+            if (type == Timestamp.class) return Kind.TIMESTAMP;
+            if (type == java.util.Date.class) return Kind.DATE;
+            if (type == java.sql.Date.class) return Kind.SQL_DATE;
+            if (type == Time.class) return Kind.TIME;
+            if (type.isEnum()) return Kind.ENUM;
+            return Kind.OBJECT;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db.dao;
+
+import ua.net.uid.utils.db.Processor;
+import ua.net.uid.utils.db.query.Condition;
+import ua.net.uid.utils.db.query.QueryBuilder;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class Scan {
+    private final CompletableFuture<?>[] futures;
+    private final AtomicLongArray rows;
+    private volatile boolean cancelled = false;
+    private volatile Throwable failure = null;
+
+    private Scan(int partitions) {
+        this.futures = new CompletableFuture<?>[partitions];
+        this.rows = new AtomicLongArray(partitions);
+    }
+
+    static <T extends Entity<PK>, PK extends Serializable> Scan start(
+            DAOBase<T, PK> dao, Processor.Callback<T> callback, List<Condition> partitions
+    ) {
+        final Scan scan = new Scan(partitions.size());
+        for (int i = 0; i < scan.futures.length; ++i) {
+            final int partition = i;
+            if (scan.cancelled) {
+                scan.futures[i] = CompletableFuture.completedFuture(null);
+                continue;
+            }
+            scan.futures[i] = new QueryBuilder()
+                    .append("SELECT * FROM ").append(dao.getTableName())
+                    .append(" WHERE ", partitions.get(i))
+                    .on(dao.getSession()).serverSide(dao.isServerSide()).foreachAsync(dao.getFetcher(), item -> {
+                        if (scan.cancelled) throw new CancellationException("scan cancelled");
+                        callback.call(item);
+                        scan.rows.incrementAndGet(partition);
+                    });
+            scan.futures[i].whenComplete((result, ex) -> {
+                if (ex != null && !scan.cancelled) {
+                    scan.failure = ex;
+                    scan.cancel();
+                }
+            });
+        }
+        return scan;
+    }
+
+    public int getPartitions() {
+        return futures.length;
+    }
+
+    public long getRows(int partition) {
+        return rows.get(partition);
+    }
+
+    public long getRows() {
+        long total = 0;
+        for (int i = 0; i < futures.length; ++i)
+            total += rows.get(i);
+        return total;
+    }
+
+    public boolean isDone(int partition) {
+        return futures[partition].isDone();
+    }
+
+    public boolean isDone() {
+        for (CompletableFuture<?> future : futures)
+            if (!future.isDone()) return false;
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled && failure == null;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (CompletableFuture<?> future : futures)
+            if (future != null) future.cancel(true);
+    }
+
+    public long await() throws SQLException {
+        Throwable cause = null;
+        for (CompletableFuture<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new SQLException("scan interrupted", ex);
+            } catch (ExecutionException ex) {
+                if (cause == null) cause = ex.getCause();
+            } catch (CancellationException ignored) {
+            }
+        }
+        // partitions cancelled after another one failed only report the cancellation, the failure is kept aside
+        if (cause == null) cause = failure;
+        if (cause instanceof CompletionException && cause.getCause() != null) cause = cause.getCause();
+        if (cause instanceof SQLException) throw (SQLException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        if (cause != null) throw new SQLException("scan failed", cause);
+        if (cancelled) throw new SQLException("scan cancelled");
+        return getRows();
+    }
+}
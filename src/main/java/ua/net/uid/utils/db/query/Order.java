@@ -15,13 +15,19 @@
  */
 package ua.net.uid.utils.db.query;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.regex.Pattern;
 
 public class Order implements QueryPart {
+    private static final Pattern COLUMN = Pattern.compile("(\\w+|\"[^\"]+\"|`[^`]+`)(\\.(\\w+|\"[^\"]+\"|`[^`]+`))*");
+
     private final StringBuilder expressions = new StringBuilder();
     private final ArrayList<Object> params = new ArrayList<>(1);
+    private final ArrayList<Key> keys = new ArrayList<>(1);
 
     private Order() {
     }
@@ -31,35 +37,119 @@ public class Order implements QueryPart {
     }
 
     public Order asc(CharSequence expression, Object... args) {
-        return append(expression, " ASC", args);
+        return append(expression, " ASC", false, args);
     }
 
     public Order desc(CharSequence expression, Object... args) {
-        return append(expression, " DESC", args);
+        return append(expression, " DESC", true, args);
     }
 
     public Order ascNullFirst(CharSequence expression, Object... args) {
-        return append(expression, " ASC NULLS FIRST", args);
+        return append(expression, " ASC NULLS FIRST", false, args);
     }
 
     public Order ascNullLast(CharSequence expression, Object... args) {
-        return append(expression, " ASC NULLS LAST", args);
+        return append(expression, " ASC NULLS LAST", false, args);
     }
 
     public Order descNullFirst(CharSequence expression, Object... args) {
-        return append(expression, " DESC NULLS FIRST", args);
+        return append(expression, " DESC NULLS FIRST", true, args);
     }
 
     public Order descNullLast(CharSequence expression, Object... args) {
-        return append(expression, " DESC NULLS LAST", args);
+        return append(expression, " DESC NULLS LAST", true, args);
     }
 
-    private Order append(CharSequence expression, String suffix, Object[] args) {
+    private Order append(CharSequence expression, String suffix, boolean descending, Object[] args) {
         expressions.append(expressions.length() == 0 ? " ORDER BY " : ", ").append(expression).append(suffix);
         if (args != null) Collections.addAll(params, args);
+        keys.add(new Key(expression.toString(), descending, args));
         return this;
     }
 
+    public Order as(CharSequence alias) {
+        if (keys.isEmpty())
+            throw new IllegalStateException("no order key to alias");
+        if (alias == null || alias.length() == 0)
+            throw new IllegalArgumentException("alias is empty");
+        keys.get(keys.size() - 1).alias = alias.toString();
+        return this;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public Condition after(Object... values) {
+        if (values == null || values.length == 0) return null;
+        if (values.length != keys.size())
+            throw new IllegalArgumentException("expected " + keys.size() + " key values, got " + values.length);
+        final StringBuilder builder = new StringBuilder();
+        final List<Object> args = new ArrayList<>();
+        if (isUniform()) {
+            if (keys.size() == 1) {
+                final Key key = keys.get(0);
+                builder.append(key.expression).append(key.descending ? " < ?" : " > ?");
+                key.bind(args);
+            } else {
+                builder.append('(');
+                for (int i = 0; i < keys.size(); ++i) {
+                    if (i > 0) builder.append(", ");
+                    builder.append(keys.get(i).expression);
+                    keys.get(i).bind(args);
+                }
+                builder.append(keys.get(0).descending ? ") < (?" : ") > (?");
+                for (int i = 1; i < keys.size(); ++i) builder.append(", ?");
+                builder.append(')');
+            }
+            Collections.addAll(args, values);
+        } else {
+            for (int i = 0; i < keys.size(); ++i) {
+                builder.append(i == 0 ? "(" : " OR (");
+                for (int j = 0; j < i; ++j) {
+                    final Key key = keys.get(j);
+                    builder.append(key.expression).append(" = ? AND ");
+                    key.bind(args);
+                    args.add(values[j]);
+                }
+                final Key key = keys.get(i);
+                builder.append(key.expression).append(key.descending ? " < ?)" : " > ?)");
+                key.bind(args);
+                args.add(values[i]);
+            }
+        }
+        return Condition.raw(builder, args.toArray());
+    }
+
+    // keyset values are read back by label: plain columns use their own name, expressions need an alias
+    public QueryPart selection() {
+        final StringBuilder builder = new StringBuilder();
+        final List<Object> args = new ArrayList<>();
+        for (Key key : keys) {
+            if (key.alias != null) {
+                builder.append(", ").append(key.expression).append(" AS ").append(key.alias);
+                key.bind(args);
+            } else if (!COLUMN.matcher(key.expression.trim()).matches()) {
+                throw new IllegalArgumentException("order key " + key.expression + " is not a column, give it an alias with as()");
+            }
+        }
+        return builder.length() == 0 ? null : Condition.raw(builder, args.toArray());
+    }
+
+    public Object[] keys(ResultSet result) throws SQLException {
+        final Object[] values = new Object[keys.size()];
+        for (int i = 0; i < values.length; ++i)
+            values[i] = result.getObject(keys.get(i).label());
+        return values;
+    }
+
+    private boolean isUniform() {
+        final boolean descending = keys.get(0).descending;
+        for (Key key : keys)
+            if (key.descending != descending) return false;
+        return true;
+    }
+
     @Override
     public void build(StringBuilder builder) {
         builder.append(expressions);
@@ -69,4 +159,31 @@ public class Order implements QueryPart {
     public void bind(List<Object> params) {
         params.addAll(this.params);
     }
+
+    private static final class Key {
+        private final String expression;
+        private final boolean descending;
+        private final Object[] args;
+        private String alias = null;
+
+        Key(String expression, boolean descending, Object[] args) {
+            this.expression = expression;
+            this.descending = descending;
+            this.args = args;
+        }
+
+        void bind(List<Object> params) {
+            if (args != null) Collections.addAll(params, args);
+        }
+
+        String label() {
+            if (alias != null) return alias;
+            String label = expression.trim();
+            final int dot = label.lastIndexOf('.');
+            if (dot >= 0) label = label.substring(dot + 1);
+            if (label.length() > 1 && label.charAt(0) == '"' && label.charAt(label.length() - 1) == '"')
+                label = label.substring(1, label.length() - 1);
+            return label;
+        }
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 nightfall.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ua.net.uid.utils.db.query;
+
+import ua.net.uid.utils.db.Processor;
+import ua.net.uid.utils.db.Session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public final class PreparedQuery {
+    private final String query;
+    private final Object[] params;
+    private final String[] names;
+    private final int[] positions;
+    private final int[] slots;
+
+    PreparedQuery(String query, Object[] params) {
+        this.query = query;
+        this.params = params;
+        List<String> names = new ArrayList<>();
+        int count = 0;
+        for (Object param : params)
+            if (param instanceof Slot) ++count;
+        this.positions = new int[count];
+        this.slots = new int[count];
+        for (int i = 0, j = 0; i < params.length; ++i) {
+            if (params[i] instanceof Slot) {
+                final String name = ((Slot) params[i]).getName();
+                int slot = names.indexOf(name);
+                if (slot < 0) {
+                    slot = names.size();
+                    names.add(name);
+                }
+                positions[j] = i;
+                slots[j++] = slot;
+                params[i] = null;
+            }
+        }
+        this.names = names.toArray(new String[0]);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    public Object[] toParams(Object... values) {
+        if (values == null || values.length != names.length)
+            throw new IllegalArgumentException("expected " + names.length + " values for slots " + Arrays.toString(names));
+        final Object[] result = params.clone();
+        for (int i = 0; i < positions.length; ++i)
+            result[positions[i]] = values[slots[i]];
+        return result;
+    }
+
+    public Object[] toParams(Map<String, ?> values) {
+        final Object[] result = params.clone();
+        for (int i = 0; i < positions.length; ++i) {
+            final String name = names[slots[i]];
+            if (!values.containsKey(name))
+                throw new IllegalArgumentException("value for slot '" + name + "' is missing");
+            result[positions[i]] = values.get(name);
+        }
+        return result;
+    }
+
+    public Query bind(Object... values) {
+        return new Bound(query, toParams(values));
+    }
+
+    public Query bind(Map<String, ?> values) {
+        return new Bound(query, toParams(values));
+    }
+
+    public Processor on(Session session, Object... values) {
+        return session.query(query, toParams(values));
+    }
+
+    public Processor on(Session session, Map<String, ?> values) {
+        return session.query(query, toParams(values));
+    }
+
+    @Override
+    public String toString() {
+        return query;
+    }
+
+    private static final class Bound implements Query {
+        private final String query;
+        private final Object[] params;
+
+        Bound(String query, Object[] params) {
+            this.query = query;
+            this.params = params;
+        }
+
+        @Override
+        public String getQuery() {
+            return query;
+        }
+
+        @Override
+        public Object[] getParams() {
+            return params;
+        }
+    }
+}
@@ -124,6 +124,10 @@ public class QueryBuilder implements Query {
         return session.query(getQuery(), getParams());
     }
 
+    public PreparedQuery compile() {
+        return new PreparedQuery(getQuery(), getParams());
+    }
+
     @Override
     public String getQuery() {
         return builder.toString();
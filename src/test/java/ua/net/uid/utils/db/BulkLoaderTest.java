@@ -0,0 +1,83 @@
+package ua.net.uid.utils.db;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkLoaderTest {
+    private static final String[] COLUMNS = {"\"name\"", "\"type\""};
+    private static JdbcConnectionPool source;
+    private static Database db;
+
+    @BeforeAll
+    static void beforeAll() throws Exception {
+        source = JdbcConnectionPool.create(String.format("jdbc:h2:mem:x%d", System.nanoTime()), "sa", "");
+        db = new Database(new Connector.Pool(source, 4));
+        db.query("CREATE TABLE IF NOT EXISTS \"test\" (\"id\" INT IDENTITY NOT NULL PRIMARY KEY, \"name\" VARCHAR(30) NOT NULL, \"type\" INTEGER NOT NULL DEFAULT 0)").execute();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        db.close();
+        source.dispose();
+    }
+
+    @SuppressWarnings("UnnecessaryBoxing")
+    @Test
+    void loadIterable() throws SQLException {
+        List<Integer> items = IntStream.range(0, 2500).boxed().collect(Collectors.toList());
+        List<Long> reported = new ArrayList<>();
+        BulkLoader<Integer> loader = db.<Integer>loader("\"test\"", COLUMNS, i -> new Object[]{"iterable", i})
+                .chunk(1000).rows(64).progress((rows, nanos) -> reported.add(rows));
+        assertEquals(2500, loader.load(items));
+        assertFalse(loader.isCopied());
+        assertEquals(2500, loader.getRows());
+        assertTrue(loader.getThroughput() > 0);
+        assertEquals(Long.valueOf(2500), reported.get(reported.size() - 1));
+        assertTrue(reported.contains(1000L));
+        assertEquals(Integer.valueOf(2500), db.query("SELECT COUNT(*) FROM \"test\" WHERE \"name\" = 'iterable'").select(Outcome.FIRST_INT));
+        assertEquals(Long.valueOf(2499L * 2500 / 2), db.query("SELECT SUM(\"type\") FROM \"test\" WHERE \"name\" = 'iterable'").select(Outcome.FIRST_LONG));
+    }
+
+    @SuppressWarnings("UnnecessaryBoxing")
+    @Test
+    void loadStream() throws SQLException {
+        assertEquals(10, db.<Integer>loader("\"test\"", COLUMNS, i -> new Object[]{"stream", i}).chunk(3).rows(1).commit(true)
+                .load(IntStream.range(0, 10).boxed()));
+        assertEquals(Integer.valueOf(10), db.query("SELECT COUNT(*) FROM \"test\" WHERE \"name\" = 'stream'").select(Outcome.FIRST_INT));
+    }
+
+    @SuppressWarnings("UnnecessaryBoxing")
+    @Test
+    void failures() throws SQLException {
+        BulkLoader<Integer> binder = db.<Integer>loader("\"test\"", COLUMNS, i -> {
+            if (i == 50) throw new SQLException("binder failed");
+            return new Object[]{"binder", i};
+        }).chunk(10).commit(true);
+        assertEquals("binder failed", assertThrows(SQLException.class, () -> binder.load(IntStream.range(0, 100).boxed())).getMessage());
+        assertEquals(Integer.valueOf(0), db.query("SELECT COUNT(*) FROM \"test\" WHERE \"name\" = 'binder' AND \"type\" >= 50").select(Outcome.FIRST_INT));
+
+        BulkLoader<Integer> consumer = db.loader("\"test\"", COLUMNS, i -> new Object[]{i == 500 ? null : "consumer", i});
+        assertThrows(SQLException.class, () -> consumer.load(IntStream.range(0, 100000).boxed()));
+    }
+
+    @Test
+    void csv() {
+        StringBuilder builder = new StringBuilder();
+        BulkLoader.csv(builder, new Object[]{"a \"b\", c", null, 1, Dialect.H2, ""});
+        assertEquals("\"a \"\"b\"\", c\",,\"1\",\"H2\",\"\"\n", builder.toString());
+
+        builder.setLength(0);
+        BulkLoader.csv(builder, new Object[]{new byte[]{0, 15, (byte) 0xAB, '"'}, new byte[0], null});
+        assertEquals("\"\\x000fab22\",\"\\x\",\n", builder.toString());
+    }
+}
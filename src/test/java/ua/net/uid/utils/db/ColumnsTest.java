@@ -0,0 +1,74 @@
+package ua.net.uid.utils.db;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnsTest {
+    private static JdbcConnectionPool source;
+    private static Database db;
+
+    @BeforeAll
+    static void beforeAll() throws SQLException {
+        source = JdbcConnectionPool.create(String.format("jdbc:h2:mem:x%d", System.nanoTime()), "sa", "");
+        db = new Database(source, true);
+        db.query("CREATE TABLE \"metrics\" (\"id\" BIGINT NOT NULL PRIMARY KEY, \"kind\" VARCHAR(10), \"value\" DOUBLE, \"flag\" BOOLEAN, \"amount\" DECIMAL(10, 2))").execute();
+        Batch batch = db.batch("INSERT INTO \"metrics\" VALUES (?, ?, ?, ?, ?)");
+        for (int i = 0; i < 3000; ++i)
+            batch.values(i, i % 7 == 0 ? null : "k" + i % 3, i % 5 == 0 ? null : i * 0.5, i % 2 == 0, new BigDecimal(i).movePointLeft(2));
+        batch.execute();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        source.dispose();
+    }
+
+    @Test
+    void columns() throws SQLException {
+        Columns columns = db.query("SELECT * FROM \"metrics\" ORDER BY \"id\"").columns();
+        assertEquals(3000, columns.size());
+        assertEquals(5, columns.getColumnCount());
+        assertEquals(2, columns.indexOf("kind"));
+        assertEquals(0, columns.indexOf("missing"));
+        assertEquals(Columns.Type.LONG, columns.getType(1));
+        assertEquals(Columns.Type.STRING, columns.getType(2));
+        assertEquals(Columns.Type.DOUBLE, columns.getType(3));
+        assertEquals(Columns.Type.BOOLEAN, columns.getType(4));
+        assertEquals(Columns.Type.OBJECT, columns.getType(5));
+
+        long[] ids = columns.longs(1);
+        assertEquals(3000, ids.length);
+        assertEquals(2999, ids[2999]);
+
+        assertEquals(3, columns.dictionary(2).length);
+        assertEquals(-1, columns.codes(2)[0]);
+        assertTrue(columns.isNull(2, 0));
+        assertNull(columns.getString(2, 0));
+        assertEquals("k1", columns.getString(2, 1));
+        assertEquals(columns.codes(2)[1], columns.codes(2)[4]);
+
+        assertTrue(columns.isNull(3, 2995));
+        assertFalse(columns.isNull(3, 2999));
+        assertEquals(1499.5, columns.getDouble(3, 2999));
+        assertNull(columns.getObject(3, 0));
+        assertTrue(columns.getBoolean(4, 2998));
+        assertFalse(columns.getBoolean(4, 2999));
+        assertEquals(new BigDecimal("29.99"), columns.getObject(5, 2999));
+
+        assertThrows(IllegalStateException.class, () -> columns.longs(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> columns.getLong(1, 3000));
+        assertThrows(IndexOutOfBoundsException.class, () -> columns.getType(6));
+
+        Columns empty = db.query("SELECT * FROM \"metrics\" WHERE \"id\" < 0").columns();
+        assertEquals(0, empty.size());
+        assertEquals(0, empty.longs(1).length);
+        assertEquals(0, empty.dictionary(2).length);
+    }
+}
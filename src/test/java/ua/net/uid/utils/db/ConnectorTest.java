@@ -6,6 +6,8 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -104,4 +106,171 @@ class ConnectorTest {
         assertEquals(0, source.getActiveConnections());
     }
 
+    @Test
+    void poolConnector() throws Exception {
+        assertEquals(0, source.getActiveConnections());
+
+        Connector.Pool connector = new Connector.Pool(source, 1, 2).timeout(50);
+        assertEquals(0, source.getActiveConnections());
+        connector.fill();
+        assertEquals(1, connector.getSize());
+        assertEquals(1, source.getActiveConnections());
+
+        Connection connection1 = connector.get();
+        Connection connection2 = connector.get();
+        assertNotNull(connection1);
+        assertNotNull(connection2);
+        assertNotEquals(connection1, connection2);
+        assertEquals(2, connector.getActive());
+        assertEquals(2, source.getActiveConnections());
+        assertThrows(SQLException.class, connector::get);
+
+        connection1.setAutoCommit(false);
+        connector.release(connection1);
+        assertFalse(connection1.isClosed());
+        assertTrue(connection1.getAutoCommit());
+        assertEquals(1, connector.getActive());
+        assertSame(connection1, connector.get());
+
+        connector.release(connection1);
+        connector.release(connection2);
+        assertEquals(0, connector.getActive());
+        assertEquals(2, connector.getSize());
+        assertEquals(2, source.getActiveConnections());
+
+        connector.expiration(0);
+        Thread.sleep(5);
+        connector.release(connector.get());
+        assertEquals(1, connector.getSize());
+        assertEquals(1, source.getActiveConnections());
+
+        Connection connection3 = connector.get();
+        connector.close();
+        assertFalse(connection3.isClosed());
+        assertThrows(SQLException.class, connector::get);
+        connector.release(connection3);
+        assertTrue(connection3.isClosed());
+        assertEquals(0, connector.getSize());
+        assertEquals(0, source.getActiveConnections());
+    }
+
+    @Test
+    void poolConnectorValidation() throws Exception {
+        Connector.Pool connector = new Connector.Pool(source, 1).validation(0);
+        Connection connection1 = connector.get();
+        connector.release(connection1);
+        connection1.close();
+        Thread.sleep(1);
+        Connection connection2 = connector.get();
+        assertNotSame(connection1, connection2);
+        assertFalse(connection2.isClosed());
+        assertEquals(1, connector.getSize());
+        connector.release(connection2);
+        connector.close();
+        assertEquals(0, source.getActiveConnections());
+    }
+
+    @Test
+    void routingConnector() throws Exception {
+        JdbcConnectionPool[] sources = new JdbcConnectionPool[3];
+        String[] names = {"primary", "replica1", "replica2"};
+        for (int i = 0; i < sources.length; ++i) {
+            sources[i] = JdbcConnectionPool.create(String.format("jdbc:h2:mem:r%d_%d", i, System.nanoTime()), "sa", "");
+            Database node = new Database(sources[i], true);
+            node.query("CREATE TABLE node (name VARCHAR(10))").execute();
+            node.query("INSERT INTO node VALUES (?)", names[i]).update();
+        }
+        try {
+            Connector.Routing routing = new Connector.Routing(
+                    new Connector.Pool(sources[0], 4), new Connector.Pool(sources[1], 4), new Connector.Pool(sources[2], 4)
+            );
+            assertEquals(12, routing.capacity());
+            Database db = new Database(routing);
+
+            String first = db.query("SELECT name FROM node").scalar(result -> result.getString(1));
+            String second = db.query("SELECT name FROM node").scalar(result -> result.getString(1));
+            assertTrue(first.startsWith("replica"));
+            assertTrue(second.startsWith("replica"));
+            assertEquals(0, routing.getOutstanding(0) + routing.getOutstanding(1));
+
+            try (Cursor<String> cursor = db.query("SELECT name FROM node").cursor(result -> result.getString(1))) {
+                String held = cursor.next();
+                assertEquals(1, routing.getOutstanding(held.equals("replica1") ? 0 : 1));
+                for (int i = 0; i < 4; ++i)
+                    assertNotEquals(held, db.query("SELECT name FROM node").scalar(result -> result.getString(1)));
+            }
+
+            assertEquals(1, db.query("UPDATE node SET name = name").update());
+            db.transaction(tx -> assertEquals("primary", tx.query("SELECT name FROM node").scalar(result -> result.getString(1))));
+            db.block(session -> assertEquals("primary", session.query("SELECT name FROM node").scalar(result -> result.getString(1))));
+
+            routing.stickiness(60000);
+            assertTrue(db.query("SELECT name FROM node").scalar(result -> result.getString(1)).startsWith("replica"));
+            db.query("UPDATE node SET name = name").update();
+            assertEquals("primary", db.query("SELECT name FROM node").scalar(result -> result.getString(1)));
+
+            // reads served by the primary while sticky do not extend the window
+            long[] now = {System.nanoTime()};
+            routing.clock(() -> now[0]).stickiness(300);
+            db.query("UPDATE node SET name = name").update();
+            assertEquals("primary", db.query("SELECT name FROM node").scalar(result -> result.getString(1)));
+            now[0] += TimeUnit.MILLISECONDS.toNanos(200);
+            assertEquals("primary", db.query("SELECT name FROM node").scalar(result -> result.getString(1)));
+            now[0] += TimeUnit.MILLISECONDS.toNanos(200);
+            assertTrue(db.query("SELECT name FROM node").scalar(result -> result.getString(1)).startsWith("replica"));
+
+            // pinned reads and dialect detection acquire through get() without starting the window
+            db.block(session -> assertEquals("primary", session.query("SELECT name FROM node").scalar(result -> result.getString(1))));
+            assertNotNull(new Database(routing).getDialect());
+            assertTrue(db.query("SELECT name FROM node").scalar(result -> result.getString(1)).startsWith("replica"));
+            db.batch("UPDATE node SET name = ? WHERE name = ?").values("primary", "primary").update();
+            assertEquals("primary", db.query("SELECT name FROM node").scalar(result -> result.getString(1)));
+            now[0] += TimeUnit.MILLISECONDS.toNanos(400);
+            db.transaction(tx -> tx.query("SELECT name FROM node").scalar(result -> result.getString(1)));
+            assertTrue(db.query("SELECT name FROM node").scalar(result -> result.getString(1)).startsWith("replica"));
+            db.transaction(tx -> tx.query("UPDATE node SET name = name").update());
+            assertEquals("primary", db.query("SELECT name FROM node").scalar(result -> result.getString(1)));
+            routing.clock(System::nanoTime);
+
+            Connector.Routing weighted = new Connector.Routing(new Connector.Pool(sources[0], 1), new Connector.Static(sources[1].getConnection()))
+                    .balance(Connector.Routing.Balance.LATENCY_WEIGHTED);
+            Connection shared1 = weighted.read();
+            Connection shared2 = weighted.read();
+            assertSame(shared1, shared2);
+            assertEquals(2, weighted.getOutstanding(0));
+            weighted.release(shared1);
+            weighted.release(shared2);
+            assertEquals(0, weighted.getOutstanding(0));
+            assertTrue(weighted.getLatency(0, TimeUnit.NANOSECONDS) > 0);
+            weighted.close();
+            db.close();
+        } finally {
+            for (JdbcConnectionPool pool : sources)
+                pool.dispose();
+        }
+    }
+
+    @Test
+    void routingConnectorFallback() throws Exception {
+        Connector broken = new Connector() {
+            @Override
+            public Connection get() throws SQLException {
+                throw new SQLException("replica is down");
+            }
+
+            @Override
+            public void release(Connection connection) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Connector.Routing routing = new Connector.Routing(new Connector.Pooled(source), broken);
+        Connection connection = routing.read();
+        assertEquals(1, source.getActiveConnections());
+        routing.release(connection);
+        assertEquals(0, source.getActiveConnections());
+        assertEquals(0, routing.getOutstanding(0));
+    }
 }
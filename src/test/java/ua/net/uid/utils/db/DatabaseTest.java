@@ -7,6 +7,15 @@ import org.junit.jupiter.api.Test;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -55,6 +64,53 @@ class DatabaseTest {
         );
     }
 
+    @SuppressWarnings("UnnecessaryBoxing")
+    @Test
+    void chunkedBatchTest() throws Exception {
+        Batch batch = db.batch("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?,?)").chunk(2)
+                .values("chunked", 1).values("chunked", 2).values("chunked", 3);
+        assertEquals(2, batch.getCount());
+        assertEquals(5, batch.values("chunked", 4).values("chunked", 5).update());
+        assertEquals(Integer.valueOf(5), db.query("SELECT COUNT(*) FROM \"test\" WHERE \"name\" = 'chunked'").select(Outcome.FIRST_INT));
+
+        batch = db.batch("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?,?)").chunk(0, 20);
+        assertEquals(1, batch.values("chunked bytes", 1).getCount());
+        assertEquals(2, batch.values("chunked bytes", 2).getCount());
+        assertArrayEquals(new int[0], batch.execute());
+
+        Batch failed = db.batch("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?,?)").chunk(2).commit(true)
+                .values("chunked commit", 1).values("chunked commit", 2).values("chunked commit", 3);
+        assertThrows(SQLException.class, () -> failed.values("chunked commit", null));
+        assertEquals(2, failed.getCount());
+        assertEquals(Integer.valueOf(2), db.query("SELECT COUNT(*) FROM \"test\" WHERE \"name\" = 'chunked commit'").select(Outcome.FIRST_INT));
+    }
+
+    @SuppressWarnings("UnnecessaryBoxing")
+    @Test
+    void multiRowBatchTest() throws Exception {
+        assertArrayEquals(
+                new int[]{4, 2, 1},
+                db.batch("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?, ?)").rows(4)
+                        .values("rows", 1).values("rows", 2).values("rows", 3).values("rows", 4)
+                        .values("rows", 5).values("rows", 6).values("rows", 7).execute()
+        );
+        assertEquals(Integer.valueOf(28), db.query("SELECT SUM(\"type\") FROM \"test\" WHERE \"name\" = 'rows'").select(Outcome.FIRST_INT));
+
+        Batch limited = db.batch("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?, ?)").rows(100, 5).chunk(3).commit(true);
+        assertEquals(2, limited.values("rows limited", 1).values("rows limited", 2).getCount());
+        assertEquals(3, limited.values("rows limited", 3).getCount());
+        assertThrows(SQLException.class, () -> limited.values("rows limited"));
+        assertEquals(Integer.valueOf(3), db.query("SELECT COUNT(*) FROM \"test\" WHERE \"name\" = 'rows limited'").select(Outcome.FIRST_INT));
+
+        List<Integer> keys = new ArrayList<>();
+        assertEquals(3, db.batch("INSERT INTO \"test\" (\"name\") VALUES (?)").rows(2)
+                .keys(result -> result.getInt(1), keys::add).values("rows keys").values("rows keys").values("rows keys").update());
+        assertEquals(3, keys.size());
+        assertEquals(keys, db.query("SELECT \"id\" FROM \"test\" WHERE \"name\" = 'rows keys' ORDER BY \"id\"").list(result -> result.getInt(1)));
+
+        assertThrows(IllegalArgumentException.class, () -> db.batch("DELETE FROM \"test\" WHERE \"id\" = ?").rows(10));
+    }
+
     @SuppressWarnings("UnnecessaryBoxing")
     @Test
     void blockTest() throws Exception {
@@ -118,4 +174,217 @@ class DatabaseTest {
 
         assertEquals(Integer.valueOf(1), db.query("DELETE FROM \"test\" WHERE \"name\" = 'Transaction4'").update(Outcome.UPDATES_COUNT));
     }
+
+    @Test
+    void nestedTransactionTest() throws Exception {
+        db.transaction(tx -> {
+            assertFalse(tx.isNested());
+            tx.query("INSERT INTO \"test\" (\"name\") VALUES (?)", "Nested outer").update();
+            for (int i = 0; i < 4; ++i) {
+                final int row = i;
+                try {
+                    tx.nested(nested -> {
+                        assertTrue(nested.isNested());
+                        nested.query("INSERT INTO \"test\" (\"name\") VALUES (?)", "Nested " + row).update();
+                        if (row % 2 == 1) throw new SQLException("bad row " + row);
+                    });
+                } catch (SQLException ex) {
+                    assertEquals("bad row " + row, ex.getMessage());
+                }
+            }
+            tx.nested(nested -> {
+                nested.query("INSERT INTO \"test\" (\"name\") VALUES (?)", "Nested manual").update();
+                nested.nested(inner -> inner.query("INSERT INTO \"test\" (\"name\") VALUES (?)", "Nested inner").update());
+                nested.rollback();
+                assertThrows(SQLException.class, nested::commit);
+            });
+        });
+        assertEquals(Integer.valueOf(3), db.query("SELECT COUNT(*) FROM \"test\" WHERE \"name\" LIKE 'Nested %'").select(Outcome.FIRST_INT));
+        assertEquals(Integer.valueOf(0), db.query("SELECT COUNT(*) FROM \"test\" WHERE \"name\" IN ('Nested 1', 'Nested 3', 'Nested manual', 'Nested inner')").select(Outcome.FIRST_INT));
+    }
+
+    @Test
+    void cursorTest() throws Exception {
+        db.batch("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?,?)").values("cursor", 1).values("cursor", 2).values("cursor", 3).execute();
+        int active = source.getActiveConnections();
+        try (Cursor<Integer> cursor = db.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ? ORDER BY \"type\"", "cursor").cursor(result -> result.getInt(1))) {
+            assertEquals(active + 1, source.getActiveConnections());
+            assertTrue(cursor.hasNext());
+            assertEquals(Integer.valueOf(1), cursor.next());
+            assertEquals(Integer.valueOf(2), cursor.next());
+            assertEquals(Integer.valueOf(3), cursor.next());
+            assertFalse(cursor.hasNext());
+            assertTrue(cursor.isClosed());
+            assertThrows(NoSuchElementException.class, cursor::next);
+        }
+        assertEquals(active, source.getActiveConnections());
+    }
+
+    @Test
+    void streamTest() throws Exception {
+        db.batch("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?,?)").values("stream", 1).values("stream", 2).values("stream", 3).execute();
+        int active = source.getActiveConnections();
+        try (Stream<Integer> stream = db.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ? ORDER BY \"type\"", "stream").fetchSize(2).stream(result -> result.getInt(1))) {
+            List<Integer> types = stream.filter(type -> type > 1).collect(Collectors.toList());
+            assertEquals(Arrays.asList(2, 3), types);
+        }
+        assertEquals(active, source.getActiveConnections());
+
+        try (Stream<Integer> stream = db.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ? ORDER BY \"type\"", "stream").stream(result -> result.getInt(1))) {
+            assertEquals(Integer.valueOf(1), stream.findFirst().orElse(null));
+            assertEquals(active + 1, source.getActiveConnections());
+        }
+        assertEquals(active, source.getActiveConnections());
+    }
+
+    @Test
+    void optionsTest() throws Exception {
+        db.batch("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?,?)").values("options", 1).values("options", 2).values("options", 3).execute();
+        Database cached = new Database(new Connector.Pooled(source), 8);
+        cached.block(session -> {
+            assertEquals(2, session.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ?", "options").maxRows(2).timeout(10).list(result -> result.getInt(1)).size());
+            assertEquals(3, session.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ?", "options").list(result -> result.getInt(1)).size());
+            assertEquals(1, cached.getStatementCache().getHits());
+        });
+
+        db.block(session -> {
+            assertThrows(UnsupportedOperationException.class, () -> session.defaults().maxRows(1));
+            session.defaults(new Options(session.defaults()).maxRows(1));
+            assertEquals(1, session.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ?", "options").list(result -> result.getInt(1)).size());
+            assertEquals(2, session.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ?", "options").maxRows(2).list(result -> result.getInt(1)).size());
+        });
+        assertEquals(0, db.defaults().getMaxRows());
+        assertEquals(3, db.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ?", "options").list(result -> result.getInt(1)).size());
+        assertThrows(IllegalArgumentException.class, () -> db.query("SELECT 1").fetchDirection(-1));
+
+        Processor reused = db.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ? ORDER BY \"type\"", "options");
+        assertEquals(Integer.valueOf(1), reused.scalar(result -> result.getInt(1)));
+        assertEquals(3, reused.list(result -> result.getInt(1)).size());
+    }
+
+    @Test
+    void asyncTest() throws Exception {
+        db.query("CREATE ALIAS IF NOT EXISTS SLEEP FOR \"java.lang.Thread.sleep\"").execute();
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        Connector.Pool pool = new Connector.Pool(source, 2).timeout(50);
+        Database async = new Database(pool).executor(executor);
+        try {
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; ++i)
+                futures.add(async.selectAsync("SELECT SLEEP(100), ?", result -> result.next() ? result.getInt(2) : null, i));
+            for (int i = 0; i < 6; ++i)
+                assertEquals(Integer.valueOf(i), futures.get(i).get());
+            assertEquals(1, async.updateAsync("INSERT INTO \"test\" (\"name\") VALUES (?)", "async").get());
+            assertEquals("async", async.scalarAsync("SELECT \"name\" FROM \"test\" WHERE \"name\" = ?", result -> result.getString(1), "async").get());
+            assertEquals(1, async.listAsync("SELECT \"id\" FROM \"test\" WHERE \"name\" = ?", result -> result.getInt(1), "async").get().size());
+            async.transaction(tx -> assertTrue(tx.query("SELECT 1").selectAsync(Outcome.FIRST_INT).isDone()));
+            assertEquals(0, pool.getActive());
+        } finally {
+            executor.shutdown();
+            async.close();
+        }
+    }
+
+    @Test
+    void asyncCancelTest() throws Exception {
+        Connector.Pool pool = new Connector.Pool(source, 2);
+        Database async = new Database(pool);
+        try {
+            CompletableFuture<Long> future = async.selectAsync("SELECT SUM(X) FROM SYSTEM_RANGE(1, 100000000000)", Outcome.FIRST_LONG);
+            for (int i = 0; i < 100 && pool.getActive() == 0; ++i)
+                Thread.sleep(10);
+            Thread.sleep(100);
+            assertTrue(future.cancel(true));
+            for (int i = 0; i < 500 && pool.getActive() > 0; ++i)
+                Thread.sleep(10);
+            assertEquals(0, pool.getActive());
+            assertTrue(future.isCancelled());
+        } finally {
+            async.close();
+        }
+    }
+
+    @Test
+    void asyncReuseTest() throws Exception {
+        db.query("CREATE ALIAS IF NOT EXISTS SLEEP FOR \"java.lang.Thread.sleep\"").execute();
+        Database async = new Database(new Connector.Pool(source, 2));
+        try {
+            Processor processor = async.query("SELECT SLEEP(?), 1", 300);
+            CompletableFuture<Integer> cancelled = processor.scalarAsync(result -> result.getInt(2));
+            Thread.sleep(50);
+            assertTrue(cancelled.cancel(true));
+            assertEquals(Integer.valueOf(1), processor.scalar(result -> result.getInt(2)));
+
+            CompletableFuture<Integer> first = processor.scalarAsync(result -> result.getInt(2));
+            CompletableFuture<Integer> second = processor.scalarAsync(result -> result.getInt(2));
+            assertTrue(first.cancel(true));
+            assertEquals(Integer.valueOf(1), second.get());
+        } finally {
+            async.close();
+        }
+    }
+
+    @Test
+    void serverSideTest() throws Exception {
+        db.batch("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?, ?)").values("server", 1).values("server", 2).values("server", 3).execute();
+        Outcome<Boolean> autoCommit = result -> result.getStatement().getConnection().getAutoCommit();
+        Database dedicated = new Database(new Connector.Pool(source, 1), 4);
+        try {
+            assertEquals(Boolean.FALSE, dedicated.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ?", "server").serverSide().select(autoCommit));
+            assertEquals(Boolean.TRUE, dedicated.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ?", "server").select(autoCommit));
+            assertEquals(1, dedicated.getStatementCache().size());
+
+            List<Integer> types = new ArrayList<>();
+            dedicated.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ? ORDER BY \"type\"", "server").serverSide()
+                    .foreach(result -> result.getInt(1), types::add);
+            assertEquals(Arrays.asList(1, 2, 3), types);
+            try (Stream<String> names = dedicated.query("SELECT \"name\" FROM \"test\" WHERE \"name\" = ?", "server").serverSide().stream(result -> result.getString(1))) {
+                assertEquals(3, names.count());
+            }
+            assertThrows(SQLException.class, () -> dedicated.query("SELECT \"missing\" FROM \"test\"").serverSide().foreach(result -> result.getInt(1), type -> {}));
+            assertEquals(Boolean.TRUE, dedicated.query("SELECT 1").select(autoCommit));
+
+            dedicated.transaction(tx -> {
+                tx.query("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?, ?)", "server", 4).update();
+                assertEquals(4, tx.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ?", "server").serverSide().ints().length);
+                tx.rollback();
+            });
+            assertEquals(Boolean.TRUE, dedicated.query("SELECT 1").select(autoCommit));
+        } finally {
+            dedicated.close();
+        }
+
+        try (Connection connection = source.getConnection()) {
+            // a shared connection is never switched into a read-only transaction behind its other users
+            Database shared = new Database(new Connector.Static(connection));
+            assertEquals(Boolean.TRUE, shared.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ?", "server").serverSide().select(autoCommit));
+            assertEquals(3, shared.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ?", "server").serverSide().ints().length);
+        }
+    }
+
+    @Test
+    void primitivesTest() throws Exception {
+        Batch batch = db.batch("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?, ?)");
+        for (int i = 0; i < 40; ++i)
+            batch.values("primitives", i);
+        batch.execute();
+
+        long[] ids = db.query("SELECT \"id\" FROM \"test\" WHERE \"name\" = ? ORDER BY \"id\"", "primitives").longs();
+        assertEquals(40, ids.length);
+        for (int i = 1; i < ids.length; ++i)
+            assertTrue(ids[i - 1] < ids[i]);
+        int[] types = db.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ? ORDER BY \"type\"", "primitives").ints();
+        for (int i = 0; i < types.length; ++i)
+            assertEquals(i, types[i]);
+        double[] halves = db.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ? ORDER BY \"type\"", "primitives")
+                .doubles(result -> result.getInt(1) / 2.0);
+        assertEquals(19.5, halves[39]);
+        assertEquals(0, db.query("SELECT \"id\" FROM \"test\" WHERE \"name\" = ?", "none").longs().length);
+
+        long[] sum = {0};
+        db.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ?", "primitives").foreachLong(value -> sum[0] += value);
+        assertEquals(780, sum[0]);
+        db.query("SELECT \"type\" FROM \"test\" WHERE \"name\" = ?", "primitives").foreachInt(value -> sum[0] -= value);
+        assertEquals(0, sum[0]);
+    }
 }
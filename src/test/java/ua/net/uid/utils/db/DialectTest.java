@@ -0,0 +1,46 @@
+package ua.net.uid.utils.db;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DialectTest {
+    private static final String[] KEYS = {"id"};
+    private static final String[] COLUMNS = {"name", "value"};
+
+    @Test
+    void upsert() {
+        assertEquals("MERGE INTO t (id, name, value) KEY (id) VALUES (?, ?, ?)", Dialect.H2.upsert("t", KEYS, COLUMNS));
+        assertEquals("INSERT INTO t (id, name, value) VALUES (?, ?, ?) ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name, value = EXCLUDED.value",
+                Dialect.POSTGRESQL.upsert("t", KEYS, COLUMNS));
+        assertEquals("INSERT INTO t (id) VALUES (?) ON CONFLICT (id) DO NOTHING", Dialect.POSTGRESQL.upsert("t", KEYS, new String[0]));
+        assertEquals("INSERT INTO t (id, name, value) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE name = VALUES(name), value = VALUES(value)",
+                Dialect.MYSQL.upsert("t", KEYS, COLUMNS));
+        assertEquals("MERGE INTO t USING (VALUES (?, ?, ?)) s (id, name, value) ON (t.id = s.id)" +
+                        " WHEN MATCHED THEN UPDATE SET name = s.name, value = s.value" +
+                        " WHEN NOT MATCHED THEN INSERT (id, name, value) VALUES (s.id, s.name, s.value)",
+                Dialect.STANDARD.upsert("t", KEYS, COLUMNS));
+    }
+
+    @Test
+    void detect() throws SQLException {
+        JdbcConnectionPool source = JdbcConnectionPool.create(String.format("jdbc:h2:mem:x%d", System.nanoTime()), "sa", "");
+        try {
+            Database database = new Database(source, true);
+            assertEquals(Dialect.H2, database.getDialect());
+            database.block(session -> assertEquals(Dialect.H2, session.getDialect()));
+            assertEquals(0, source.getActiveConnections());
+
+            // a single-connection pool must not be asked for a second connection inside a transaction
+            Database single = new Database(new Connector.Pool(source, 1).timeout(1000));
+            single.transaction(tx -> assertEquals(Dialect.H2, tx.getDialect()));
+            assertEquals(Dialect.H2, single.getDialect());
+            single.close();
+        } finally {
+            source.dispose();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ua.net.uid.utils.db;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryMetricsTest {
+    private static final String INSERT = "INSERT INTO \"test\" (\"name\") VALUES (?)";
+    private static final String SELECT = "SELECT \"id\" FROM \"test\" WHERE \"name\" = ?";
+
+    private static JdbcConnectionPool source;
+
+    @BeforeAll
+    static void beforeAll() throws Exception {
+        source = JdbcConnectionPool.create(String.format("jdbc:h2:mem:x%d", System.nanoTime()), "sa", "");
+        Database db = new Database(source, true);
+        db.query("CREATE TABLE IF NOT EXISTS \"test\" (\"id\" INT IDENTITY NOT NULL PRIMARY KEY, \"name\" VARCHAR(30))").execute();
+        db.query("CREATE ALIAS IF NOT EXISTS SLEEP FOR \"java.lang.Thread.sleep\"").execute();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        source.dispose();
+    }
+
+    @Test
+    void histogram() {
+        QueryMetrics.Histogram histogram = new QueryMetrics.Histogram();
+        assertEquals(0, histogram.getPercentile(99));
+        for (long i = 1; i <= 1000; ++i)
+            histogram.record(i * 1000);
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500500, histogram.getMean(), 0.001);
+        long median = histogram.getPercentile(50);
+        assertTrue(median >= 500000 && median <= 500000 * 1.125, String.valueOf(median));
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p99 >= 990000 && p99 <= 1000000, String.valueOf(p99));
+        assertEquals(1000000, histogram.getPercentile(100));
+        assertEquals(7, QueryMetrics.Histogram.upper(QueryMetrics.Histogram.index(7)));
+        assertEquals(Long.MAX_VALUE, QueryMetrics.Histogram.upper(QueryMetrics.Histogram.index(Long.MAX_VALUE)));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    void listener() throws SQLException {
+        QueryMetrics metrics = new QueryMetrics(20);
+        Database db = new Database(new Connector.Pooled(source)).listener(metrics);
+        assertSame(metrics, db.getListener());
+
+        assertEquals(1, db.query(INSERT, "metrics").update());
+        assertEquals(3, db.batch(INSERT).values("metrics").values("metrics").values("metrics").update());
+        List<Integer> ids = db.query(SELECT, "metrics").list(result -> result.getInt(1));
+        assertEquals(4, ids.size());
+        try (Stream<Integer> stream = db.query(SELECT, "metrics").stream(result -> result.getInt(1))) {
+            assertEquals(4, stream.count());
+        }
+
+        QueryMetrics.Stats insert = metrics.get(INSERT);
+        assertEquals(2, insert.getCount());
+        assertEquals(4, insert.getRows());
+        assertEquals(1, insert.getBatches());
+        QueryMetrics.Stats select = metrics.get(SELECT);
+        assertEquals(2, select.getCount());
+        assertEquals(8, select.getRows());
+        assertEquals(4, metrics.getAcquire().getCount());
+        assertEquals(4, metrics.getPrepare().getCount());
+
+        assertThrows(SQLException.class, () -> db.query("SELECT * FROM \"missing\"").execute());
+        assertNull(metrics.get("SELECT * FROM \"missing\""));
+        assertThrows(SQLException.class, () -> db.query("INSERT INTO \"test\" (\"id\") VALUES (?)", ids.get(0)).update());
+        assertEquals(1, metrics.get("INSERT INTO \"test\" (\"id\") VALUES (?)").getErrors());
+
+        assertThrows(SQLException.class, () -> db.transaction(tx -> {
+            tx.query(INSERT, "rollback").update();
+            throw new SQLException("rollback");
+        }));
+        db.transaction(tx -> tx.query(INSERT, "commit").update());
+        assertEquals(2, metrics.getTransactions().getCount());
+        assertEquals(1, metrics.getRollbacks());
+
+        // earlier statements may cross the threshold on a loaded machine, so only the delta is checked
+        long slow = metrics.getSlowQueries();
+        db.query("SELECT SLEEP(?)", 30).execute();
+        assertEquals(slow + 1, metrics.getSlowQueries());
+
+        metrics.reset();
+        assertTrue(metrics.getQueries().isEmpty());
+    }
+}
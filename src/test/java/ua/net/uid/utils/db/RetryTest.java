@@ -0,0 +1,87 @@
+package ua.net.uid.utils.db;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryTest {
+    private static JdbcConnectionPool source;
+
+    @BeforeAll
+    static void beforeAll() throws SQLException {
+        source = JdbcConnectionPool.create(String.format("jdbc:h2:mem:x%d", System.nanoTime()), "sa", "");
+        new Database(source, true).query("CREATE TABLE \"test\" (\"id\" INT IDENTITY NOT NULL PRIMARY KEY, \"name\" VARCHAR(30))").execute();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        source.dispose();
+    }
+
+    @Test
+    void retriesConflicts() throws SQLException {
+        Database db = new Database(source, true);
+        Retry retry = new Retry().attempts(5).backoff(1, 5);
+        AtomicInteger calls = new AtomicInteger();
+        db.transaction(retry, tx -> {
+            tx.query("INSERT INTO \"test\" (\"name\") VALUES (?)", "retry").update();
+            if (calls.incrementAndGet() < 3)
+                throw new SQLException("could not serialize access", Retry.SERIALIZATION_FAILURE);
+        });
+        assertEquals(1, retry.getCalls());
+        assertEquals(3, retry.getTries());
+        assertEquals(2, retry.getConflicts());
+        assertEquals(0, retry.getFailures());
+        assertEquals(Long.valueOf(1), db.query("SELECT COUNT(*) FROM \"test\" WHERE \"name\" = ?", "retry").select(Outcome.FIRST_LONG));
+
+        calls.set(0);
+        assertThrows(SQLException.class, () -> db.transaction(retry, tx -> {
+            calls.incrementAndGet();
+            throw new SQLException("syntax", "42000");
+        }));
+        assertEquals(1, calls.get());
+        assertEquals(4, retry.getTries());
+
+        Retry limited = new Retry().attempts(2).backoff(0, 0);
+        assertThrows(SQLTransactionRollbackException.class, () -> db.transaction(limited, tx -> {
+            throw new SQLTransactionRollbackException("deadlock");
+        }));
+        assertEquals(2, limited.getTries());
+        assertEquals(1, limited.getFailures());
+    }
+
+    @Test
+    void isolation() throws SQLException {
+        Connection connection = source.getConnection();
+        try {
+            int initial = connection.getTransactionIsolation();
+            Database db = new Database(connection);
+            Retry retry = new Retry().isolation(Connection.TRANSACTION_SERIALIZABLE);
+            db.transaction(retry, tx -> assertEquals(Connection.TRANSACTION_SERIALIZABLE, tx.connection().getTransactionIsolation()));
+            assertEquals(initial, connection.getTransactionIsolation());
+            assertTrue(connection.getAutoCommit());
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    void classifier() {
+        Retry retry = new Retry();
+        SQLException chained = new SQLException("batch failed", "HY000");
+        chained.setNextException(new SQLException("deadlock detected", Retry.DEADLOCK_DETECTED));
+        assertTrue(retry.isRetryable(chained));
+        assertTrue(retry.isRetryable(new SQLException("wrapped", "HY000", new SQLException("conflict", "40001"))));
+        assertFalse(retry.isRetryable(new SQLException("constraint", "23505")));
+        assertTrue(new Retry().retryOn("23505").isRetryable(new SQLException("constraint", "23505")));
+        assertThrows(IllegalArgumentException.class, () -> retry.attempts(0));
+    }
+}
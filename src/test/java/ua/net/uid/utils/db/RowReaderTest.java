@@ -0,0 +1,88 @@
+package ua.net.uid.utils.db;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RowReaderTest {
+    private static final RowFetcher<String> FETCHER = row -> row.getString("name") + ":" + row.getInt("TYPE");
+
+    private static JdbcConnectionPool source;
+    private static Database db;
+
+    @BeforeAll
+    static void beforeAll() throws SQLException {
+        source = JdbcConnectionPool.create(String.format("jdbc:h2:mem:x%d", System.nanoTime()), "sa", "");
+        db = new Database(source, true);
+        db.query("CREATE TABLE \"test\" (\"id\" INT IDENTITY NOT NULL PRIMARY KEY, \"name\" VARCHAR(30), \"type\" INTEGER)").execute();
+        db.batch("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?, ?)").values("a", 1).values("b", 2).values("c", 3).execute();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        source.dispose();
+    }
+
+    @Test
+    void rowFetcher() throws SQLException {
+        List<String> rows = db.query("SELECT * FROM \"test\" ORDER BY \"id\"").list(FETCHER);
+        assertEquals("a:1", rows.get(0));
+        assertEquals("c:3", rows.get(2));
+        assertEquals("b:2", db.query("SELECT \"name\", \"type\" FROM \"test\" WHERE \"type\" = ?", 2).scalar(FETCHER));
+
+        Map<Integer, String> map = db.query("SELECT * FROM \"test\"").map(FETCHER, "ID");
+        assertEquals("a:1", map.get(1));
+        assertEquals(3, map.size());
+
+        assertThrows(SQLException.class, () -> db.query("SELECT \"name\" FROM \"test\"").list(FETCHER));
+        Fetcher<String> plain = FETCHER;
+        assertEquals("x:7", db.query("SELECT 'x' AS \"name\", 7 AS \"type\"").select(result -> result.next() ? plain.fetch(result) : null));
+    }
+
+    @Test
+    void layoutPerShape() throws SQLException {
+        JdbcConnectionPool other = JdbcConnectionPool.create(String.format("jdbc:h2:mem:y%d", System.nanoTime()), "sa", "");
+        try {
+            Database swapped = new Database(other, true);
+            swapped.query("CREATE TABLE \"test\" (\"type\" INTEGER, \"name\" VARCHAR(30), \"id\" INT IDENTITY NOT NULL PRIMARY KEY)").execute();
+            swapped.query("INSERT INTO \"test\" (\"name\", \"type\") VALUES (?, ?)", "z", 9).update();
+            assertEquals("a:1", db.query("SELECT * FROM \"test\" WHERE \"id\" = 1").scalar(FETCHER));
+            assertEquals("z:9", swapped.query("SELECT * FROM \"test\" WHERE \"id\" = 1").scalar(FETCHER));
+            assertEquals("z:9", swapped.query("SELECT * FROM \"test\" WHERE \"id\" = 1").select(result -> result.next() ? ((Fetcher<String>) FETCHER).fetch(result) : null));
+        } finally {
+            other.dispose();
+        }
+        db.query("SELECT * FROM \"test\" ORDER BY \"id\"").select(result -> {
+            assertTrue(result.next());
+            RowReader row = RowReader.current(result);
+            assertTrue(result.next());
+            assertSame(row, RowReader.current(result));
+            return null;
+        });
+    }
+
+    @Test
+    void reader() throws SQLException {
+        db.query("SELECT \"id\", \"name\", \"type\", NULL AS \"none\", \"name\" AS \"id\" FROM \"test\" WHERE \"id\" = 1").select(result -> {
+            RowReader row = RowReader.of(result);
+            assertEquals(5, row.getColumnCount());
+            assertEquals(1, row.index("id"));
+            assertEquals(3, row.index("Type"));
+            assertSame(result, row.getResultSet());
+            assertTrue(result.next());
+            assertEquals(1L, row.getLong("id"));
+            assertEquals("a", row.getString("name"));
+            assertNull(row.getObject("none"));
+            assertTrue(row.wasNull());
+            assertThrows(SQLException.class, () -> row.index("missing"));
+            return null;
+        });
+    }
+}
@@ -0,0 +1,76 @@
+package ua.net.uid.utils.db;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementCacheTest {
+    private static JdbcConnectionPool source;
+
+    @BeforeAll
+    static void beforeAll() throws Exception {
+        source = JdbcConnectionPool.create(String.format("jdbc:h2:mem:x%d", System.nanoTime()), "sa", "");
+        new Database(source, true).query("CREATE TABLE IF NOT EXISTS \"test\" (\"id\" INT IDENTITY NOT NULL PRIMARY KEY, \"name\" VARCHAR(30))").execute();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        source.dispose();
+    }
+
+    @SuppressWarnings("UnnecessaryBoxing")
+    @Test
+    void reuseStatements() throws SQLException {
+        Database db = new Database(new Connector.Static(source.getConnection()), 2);
+        StatementCache cache = db.getStatementCache();
+        assertEquals(0, cache.size());
+
+        assertEquals(1, db.query("INSERT INTO \"test\" (\"name\") VALUES (?)", "reuse").update());
+        assertEquals(1, db.query("INSERT INTO \"test\" (\"name\") VALUES (?)", "reuse").update());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.size());
+
+        assertNotNull(db.query("INSERT INTO \"test\" (\"name\") VALUES (?)", "reuse").update(Outcome.FIRST_INT));
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+
+        db.transaction(tx -> assertEquals(Integer.valueOf(3), tx.query("SELECT COUNT(*) FROM \"test\" WHERE \"name\" = ?", "reuse").select(Outcome.FIRST_INT)));
+        assertEquals(3, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+
+        db.block(session -> session.batch("INSERT INTO \"test\" (\"name\") VALUES (?)").values("batch").values("batch").execute());
+        assertEquals(4, cache.getMisses());
+        assertEquals(2, cache.getEvictions());
+        db.batch("INSERT INTO \"test\" (\"name\") VALUES (?)").values("batch").execute();
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.size());
+
+        db.close();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void invalidateOnRelease() throws SQLException {
+        Database db = new Database(new Connector.Pooled(source), 16);
+        StatementCache cache = db.getStatementCache();
+
+        assertEquals(1, db.query("INSERT INTO \"test\" (\"name\") VALUES (?)", "release").update());
+        assertEquals(0, cache.size());
+        assertEquals(0, source.getActiveConnections());
+
+        db.block(session -> {
+            assertEquals(1, session.query("INSERT INTO \"test\" (\"name\") VALUES (?)", "release").update());
+            assertEquals(1, session.query("INSERT INTO \"test\" (\"name\") VALUES (?)", "release").update());
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.size());
+        });
+        assertEquals(0, cache.size());
+    }
+}
@@ -11,8 +11,18 @@ import ua.net.uid.utils.db.query.QueryBuilder;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -45,6 +55,92 @@ class DAOAbstractTest {
         return database;
     }
 
+    @Test
+    void withoutColumnHooks() throws SQLException {
+        PlainDAO dao = new PlainDAO(database());
+        assertEquals(dao.countAll(), dao.findAll().size());
+        UnsupportedOperationException error = assertThrows(UnsupportedOperationException.class,
+                () -> dao.insertAll(Collections.singletonList(new Item())));
+        assertTrue(error.getMessage().contains("insertAll") && error.getMessage().contains("getPrimaryColumns()"));
+        assertThrows(UnsupportedOperationException.class, () -> dao.deleteAll(Collections.singletonList(1L)));
+        assertThrows(UnsupportedOperationException.class, () -> dao.parallelForeach(item -> {}, 2));
+        assertEquals("(id = ?) OR (id = ?)", dao.getPrimaryConditions(Arrays.asList(1L, 2L)).toString());
+    }
+
+    @Test
+    void defaultPrimaryConditions() throws SQLException {
+        ItemDAO dao = new ItemDAO(database());
+        Condition condition = dao.getPrimaryConditions(Arrays.asList(3L, 1L, 2L));
+        assertEquals("id IN (?,?,?)", condition.toString());
+        assertArrayEquals(new Object[]{3L, 1L, 2L}, condition.toParams());
+        List<Long> keys = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            Item item = new Item();
+            item.setTitle("defaultPrimaryConditions " + i);
+            item.setModified(new Date());
+            assertTrue(dao.insert(item));
+            keys.add(item.getId());
+        }
+        Map<Long, Item> items = new PlainDAO(database()).getAll(keys, 2);
+        assertEquals(new HashSet<>(keys), items.keySet());
+        assertEquals(new HashSet<>(keys), dao.getAll(keys, 2).keySet());
+    }
+
+    @Test
+    void parallelForeach() throws SQLException {
+        ItemDAO dao = new ItemDAO(database());
+        for (int i = 0; i < 50; i++)
+            assertTrue(dao.insert(new Item("parallelForeach " + i, 90 + i % 2, false)));
+
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        Scan scan = dao.parallelForeach(item -> seen.add(item.getPrimaryKey()), Condition.raw("title LIKE ?", "parallelForeach%"), 4);
+        assertEquals(50, scan.await());
+        assertEquals(4, scan.getPartitions());
+        assertEquals(50, seen.size());
+        assertTrue(scan.isDone());
+        long total = 0;
+        for (int i = 0; i < scan.getPartitions(); i++)
+            total += scan.getRows(i);
+        assertEquals(50, total);
+
+        scan = dao.parallelForeach(item -> {}, Arrays.asList(Condition.raw("value = 90"), Condition.raw("value = 91")));
+        assertEquals(50, scan.await());
+        assertEquals(25, scan.getRows(0));
+        assertEquals(0, dao.parallelForeach(item -> {}, Condition.raw("value = -1"), 4).await());
+
+        Scan failed = dao.parallelForeach(item -> {
+            throw new IllegalStateException("callback failed");
+        }, Condition.raw("value = 90"), 2);
+        assertEquals("callback failed", assertThrows(IllegalStateException.class, failed::await).getMessage());
+        assertFalse(failed.isCancelled());
+
+        Scan[] cancelled = new Scan[1];
+        cancelled[0] = dao.parallelForeach(item -> {
+            while (cancelled[0] == null) Thread.yield();
+            cancelled[0].cancel();
+        }, Condition.raw("value = 91"), 3);
+        assertThrows(SQLException.class, cancelled[0]::await);
+        assertTrue(cancelled[0].isCancelled());
+        assertTrue(cancelled[0].getRows() < 25);
+    }
+
+    @Test
+    void parallelForeachWideKeys() throws SQLException {
+        database.query("CREATE TABLE wide_items (id BIGINT NOT NULL PRIMARY KEY, title VARCHAR(30), value INTEGER NOT NULL, disabled BOOLEAN NOT NULL, modified TIMESTAMP NOT NULL)").execute();
+        Batch batch = database.batch("INSERT INTO wide_items VALUES (?, 'wide', 1, FALSE, CURRENT_TIMESTAMP)");
+        for (long id : new long[]{Long.MIN_VALUE, -1, 0, Long.MAX_VALUE - 1, Long.MAX_VALUE})
+            batch.values(id);
+        batch.execute();
+
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        Scan scan = new ItemDAO(database, "wide_items").parallelForeach(item -> seen.add(item.getPrimaryKey()), 4);
+        assertEquals(5, scan.await());
+        assertTrue(scan.getPartitions() <= 4);
+        assertEquals(5, seen.size());
+        assertTrue(seen.contains(Long.MIN_VALUE));
+        assertTrue(seen.contains(Long.MAX_VALUE));
+    }
+
     @Test
     void insertsAndCheckCount() throws SQLException {
         ItemDAO dao = new ItemDAO(database());
@@ -94,6 +190,112 @@ class DAOAbstractTest {
         assertNull(dao.get(item1.getPrimaryKey()));
     }
 
+    @Test
+    void cachedCrudTest() throws SQLException {
+        DAOCached<Item, Long> dao = new DAOCached<>(new ItemDAO(database()), 16, 0);
+        Item item;
+        assertTrue(dao.insert(item = new Item("cachedCrudTest", 10, false)));
+        assertSame(dao.get(item.getPrimaryKey()), dao.get(item.getPrimaryKey()));
+        assertEquals(1, dao.getCache().getHits());
+
+        item.setValue(11);
+        assertTrue(dao.update(item));
+        assertEquals(0, dao.getCache().size());
+        assertEquals(11, dao.get(item.getPrimaryKey()).getValue());
+
+        assertTrue(dao.delete(item));
+        assertNull(dao.get(item.getPrimaryKey()));
+        assertEquals(0, dao.getCache().size());
+    }
+
+    @Test
+    void insertsAndGetAll() throws SQLException {
+        ItemDAO dao = new ItemDAO(database());
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            Item item = new Item("insertsAndGetAll " + i, 70, false);
+            assertTrue(dao.insert(item));
+            ids.add(item.getId());
+        }
+        ids.add(-1L);
+        ids.add(ids.get(0));
+
+        Map<Long, Item> items = dao.getAll(ids, 4);
+        assertEquals(11, items.size());
+        for (int i = 0; i < 11; i++)
+            assertEquals("insertsAndGetAll " + i, items.get(ids.get(i)).getTitle());
+        assertTrue(dao.getAll(Collections.emptyList()).isEmpty());
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertEquals(items.keySet(), dao.getAll(ids, 2, executor).keySet());
+            database.transaction(tx -> assertEquals(items.keySet(), new ItemDAO(tx).getAll(ids, 2, executor).keySet()));
+        } finally {
+            executor.shutdown();
+        }
+
+        DAOCached<Item, Long> cached = new DAOCached<>(dao, 16, 0);
+        assertEquals("insertsAndGetAll 0", cached.get(ids.get(0)).getTitle());
+        assertEquals(11, cached.getAll(ids).size());
+        assertEquals(11, cached.getCache().size());
+        assertEquals(11, cached.getAll(ids.subList(0, 11)).size());
+        assertEquals(13, cached.getCache().getHits());
+
+        Item changed = cached.get(ids.get(1));
+        changed.setTitle("insertsAndGetAll changed");
+        database.transaction(tx -> {
+            assertTrue(new DAOCached<>(new ItemDAO(tx), cached.getCache()).update(changed));
+            // another connection still sees the committed row and caches it again
+            assertEquals("insertsAndGetAll 1", cached.get(ids.get(1)).getTitle());
+        });
+        assertEquals("insertsAndGetAll changed", cached.get(ids.get(1)).getTitle());
+
+        assertEquals(Arrays.asList(Arrays.asList(1L, 2L, 3L, 4L), Arrays.asList(5L, 6L, 7L, 7L)), Bulk.chunks(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 1L), 4));
+        assertEquals(Arrays.asList(Arrays.asList(1L, 2L, 3L, 4L, 5L), Arrays.asList(6L, 7L, 8L, 8L)), Bulk.chunks(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L), 5));
+    }
+
+    @Test
+    void bulkWrites() throws SQLException {
+        ItemDAO dao = new ItemDAO(database());
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 7; i++)
+            items.add(new Item("bulkWrites " + i, 80, false));
+        List<Long> ids = dao.insertAll(items, result -> result.getLong(1));
+        assertEquals(7, ids.size());
+        for (int i = 0; i < 7; i++) {
+            items.get(i).setId(ids.get(i));
+            assertEquals("bulkWrites " + i, dao.get(ids.get(i)).getTitle());
+        }
+
+        for (Item item : items)
+            item.setValue(81);
+        assertEquals(7, dao.updateAll(items));
+        assertEquals(7, dao.countBy(Condition.raw("value = 81")));
+
+        long id = ids.get(6) + 1000;
+        List<Item> merged = Arrays.asList(
+                new Item(ids.get(0), "bulkWrites merged", 82, true, new Date()),
+                new Item(id, "bulkWrites new", 82, false, new Date())
+        );
+        assertEquals(2, dao.upsertAll(merged));
+        assertEquals("bulkWrites merged", dao.get(ids.get(0)).getTitle());
+        assertEquals("bulkWrites new", dao.get(id).getTitle());
+
+        DAOCached<Item, Long> cached = new DAOCached<>(dao, 16, 0);
+        assertNotNull(cached.get(id));
+        assertEquals(1, cached.getCache().size());
+        assertEquals(1, cached.insertAll(Collections.singletonList(new Item(id + 1, "bulkWrites key", 82, false, new Date()))));
+        assertEquals(1, cached.getCache().size());
+
+        List<Long> removed = new ArrayList<>(ids);
+        removed.add(id);
+        removed.add(id + 1);
+        assertEquals(9, cached.deleteAll(removed));
+        assertEquals(0, cached.getCache().size());
+        assertEquals(0, dao.countBy(Condition.raw("title LIKE ?", "bulkWrites%")));
+        assertEquals(0, dao.deleteAll(Collections.emptyList()));
+    }
+
     @Test
     void insertAndGetBy() throws SQLException {
         ItemDAO dao = new ItemDAO(database());
@@ -148,6 +350,66 @@ class DAOAbstractTest {
         });
     }
 
+    @Test
+    void insertsAndStream() throws SQLException {
+        ItemDAO dao = new ItemDAO(database());
+        for (int i = 0; i < 10; i++)
+            assertTrue(dao.insert(new Item("insertsAndStream " + i, 50, i % 2 != 0)));
+
+        try (Stream<Item> stream = dao.streamBy(Condition.raw("value = 50"), Order.by().asc("title"))) {
+            assertEquals(5, stream.filter(Item::isDisabled).count());
+        }
+        try (Stream<Item> stream = dao.streamAll()) {
+            assertEquals(dao.countAll(), stream.count());
+        }
+    }
+
+    @Test
+    void insertsAndPaginate() throws SQLException {
+        database().transaction((db) -> {
+            ItemDAO dao = new ItemDAO(database());
+            for (int i = 0; i < 25; i++)
+                assertTrue(dao.insert(new Item(String.format("insertsAndPaginate %02d", i), 60 + i % 3, false)));
+
+            Condition condition = Condition.raw("title LIKE ?", "insertsAndPaginate %");
+            assertEquals(5, dao.findBy(condition, Order.by().asc("title"), 10, 20).size());
+            assertEquals("insertsAndPaginate 20", dao.findBy(condition, Order.by().asc("title"), 10, 20).get(0).getTitle());
+            assertEquals(5, dao.findAll(Order.by().asc("id"), 5, 0).size());
+
+            Order order = Order.by().asc("title");
+            Page<Item> page = dao.findPage(condition, order, 10);
+            assertEquals(10, page.getItems().size());
+            assertEquals("insertsAndPaginate 00", page.getItems().get(0).getTitle());
+            assertTrue(page.hasNext());
+            page = dao.findPage(condition, order, 10, page.getNext());
+            assertEquals("insertsAndPaginate 10", page.getItems().get(0).getTitle());
+            page = dao.findPage(condition, order, 10, page.getNext());
+            assertEquals(5, page.getItems().size());
+            assertFalse(page.hasNext());
+
+            Order lower = Order.by().desc("LOWER(title)").as("title_key").asc("id");
+            page = dao.findPage(condition, lower, 20);
+            assertEquals("insertsAndPaginate 24", page.getItems().get(0).getTitle());
+            page = dao.findPage(condition, lower, 20, page.getNext());
+            assertEquals(5, page.getItems().size());
+            assertEquals("insertsAndPaginate 00", page.getItems().get(4).getTitle());
+            assertThrows(IllegalArgumentException.class, () -> dao.findPage(condition, Order.by().asc("LOWER(title)"), 10));
+
+            List<String> titles = new ArrayList<>();
+            dao.foreachByKeyset(item -> titles.add(item.getTitle()), condition, Order.by().desc("value").asc("id"), 4);
+            assertEquals(25, titles.size());
+            assertEquals("insertsAndPaginate 02", titles.get(0));
+            assertEquals("insertsAndPaginate 05", titles.get(1));
+            assertEquals("insertsAndPaginate 24", titles.get(24));
+
+            List<Item> all = new ArrayList<>();
+            dao.foreachAllKeyset(all::add, Order.by().asc("id"), 7);
+            assertEquals(dao.countAll(), all.size());
+            for (int i = 1; i < all.size(); ++i)
+                assertTrue(all.get(i - 1).getId() < all.get(i).getId());
+        });
+    }
+
     private static final class Item implements Entity<Long> {
         private Long id;
         private String title;
@@ -233,14 +495,53 @@ class DAOAbstractTest {
         }
     }
 
+    // a dao written against the original api, without any of the bulk column hooks
+    private static final class PlainDAO extends DAOAbstract<Item, Long> {
+        PlainDAO(Session session) {
+            super(session);
+        }
+
+        @Override
+        public String getTableName() {
+            return "test_items";
+        }
+
+        @Override
+        public Condition getPrimaryCondition(Long key) {
+            return Condition.raw("id = ?", key);
+        }
+
+        @Override
+        public Fetcher<Item> getFetcher() {
+            return new ItemFetcher();
+        }
+
+        @Override
+        public boolean insert(Item item) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean update(Item item, Long key) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     private static final class ItemDAO extends DAOAbstract<Item, Long> {
+        private final String table;
+
         ItemDAO(Session session) {
+            this(session, "test_items");
+        }
+
+        ItemDAO(Session session, String table) {
             super(session);
+            this.table = table;
         }
 
         @Override
         public String getTableName() {
-            return "test_items";
+            return table;
         }
 
         @Override
@@ -253,6 +554,21 @@ class DAOAbstractTest {
             return new ItemFetcher();
         }
 
+        @Override
+        public String[] getPrimaryColumns() {
+            return new String[]{"id"};
+        }
+
+        @Override
+        public String[] getColumns() {
+            return new String[]{"title", "value", "disabled", "modified"};
+        }
+
+        @Override
+        public Object[] getValues(Item item) {
+            return new Object[]{item.getTitle(), item.getValue(), item.isDisabled(), item.getModified()};
+        }
+
         @Override
         public boolean insert(Item item) throws SQLException {
             Processor processor = new QueryBuilder().append("INSERT INTO ").append(getTableName()).append(
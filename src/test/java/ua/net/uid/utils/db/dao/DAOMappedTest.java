@@ -0,0 +1,145 @@
+package ua.net.uid.utils.db.dao;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import ua.net.uid.utils.db.Database;
+import ua.net.uid.utils.db.RowFetcher;
+import ua.net.uid.utils.db.Session;
+import ua.net.uid.utils.db.query.Condition;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DAOMappedTest {
+    private static JdbcConnectionPool source;
+    private static Database database;
+
+    @BeforeAll
+    static void beforeAll() throws SQLException {
+        source = JdbcConnectionPool.create(String.format("jdbc:h2:mem:x%d", System.nanoTime()), "sa", "");
+        database = new Database(source, true);
+        database.query(
+                "CREATE TABLE mapped_items (" +
+                        "id BIGINT IDENTITY NOT NULL PRIMARY KEY, " +
+                        "title VARCHAR(30), " +
+                        "amount INTEGER NOT NULL, " +
+                        "disabled BOOLEAN NOT NULL, " +
+                        "kind VARCHAR(10), " +
+                        "rating INTEGER, " +
+                        "modified TIMESTAMP NOT NULL" +
+                        ")"
+        ).execute();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        source.dispose();
+    }
+
+    @Test
+    void mapper() {
+        Mapper<Item> mapper = Mapper.of(Item.class);
+        assertSame(mapper, Mapper.of(Item.class));
+        assertEquals("mapped_items", mapper.getTable());
+        assertArrayEquals(new String[]{"id"}, mapper.getPrimaryColumns());
+        assertArrayEquals(new String[]{"title", "amount", "disabled", "kind", "rating", "modified"}, mapper.getColumns());
+        assertEquals("INSERT INTO mapped_items (title, amount, disabled, kind, rating, modified) VALUES (?, ?, ?, ?, ?, ?)", mapper.getInsert());
+        assertEquals("UPDATE mapped_items SET title = ?, amount = ?, disabled = ?, kind = ?, rating = ?, modified = ? WHERE id = ?", mapper.getUpdate());
+        Item item = new Item("mapper", 1, Kind.SMALL);
+        assertEquals(Arrays.asList("mapper", 1, false, Kind.SMALL, null, item.modified), Arrays.asList(mapper.getValues(item)));
+        mapper.setPrimaryValue(item, 5);
+        assertEquals(5L, item.getPrimaryKey());
+        assertThrows(IllegalArgumentException.class, () -> Mapper.of(String.class));
+    }
+
+    @Test
+    void crud() throws SQLException {
+        ItemDAO dao = new ItemDAO(database);
+        Item item = new Item("crud", 10, Kind.LARGE);
+        assertTrue(dao.insert(item));
+        assertNotNull(item.getPrimaryKey());
+
+        Item loaded = dao.get(item.getPrimaryKey());
+        assertEquals("crud", loaded.title);
+        assertEquals(10, loaded.amount);
+        assertEquals(Kind.LARGE, loaded.kind);
+        assertNull(loaded.rating);
+        assertEquals(item.modified.getTime(), loaded.modified.getTime());
+
+        loaded.rating = 4;
+        loaded.disabled = true;
+        assertTrue(dao.update(loaded));
+        loaded = dao.get(item.getPrimaryKey());
+        assertEquals(Integer.valueOf(4), loaded.rating);
+        assertTrue(loaded.disabled);
+
+        Item explicit = new Item("explicit", 11, null);
+        explicit.id = item.id + 100;
+        assertTrue(dao.insert(explicit));
+        assertNull(dao.get(explicit.id).kind);
+
+        List<Item> partial = database.query("SELECT id, title FROM mapped_items WHERE title = ?", "crud").list(dao.getFetcher());
+        assertEquals(1, partial.size());
+        assertEquals("crud", partial.get(0).title);
+        assertEquals(0, partial.get(0).amount);
+
+        RowFetcher<Item> fetcher = dao.getMapper().getFetcher();
+        assertEquals(0, database.query("SELECT id, title FROM mapped_items WHERE title = ?", "crud").scalar(fetcher).amount);
+        assertEquals(10, database.query("SELECT * FROM mapped_items WHERE title = ?", "crud").scalar(fetcher).amount);
+
+        assertEquals(3, dao.insertAll(Arrays.asList(new Item("bulk", 1, Kind.SMALL), new Item("bulk", 2, Kind.SMALL), new Item("bulk", 3, null)), result -> result.getLong(1)).size());
+        assertEquals(3, dao.countBy(Condition.raw("title = ?", "bulk")));
+
+        assertTrue(dao.delete(item));
+        assertTrue(dao.delete(explicit));
+        assertNull(dao.get(item.getPrimaryKey()));
+    }
+
+    enum Kind {SMALL, LARGE}
+
+    @Table("mapped_items")
+    private static class Item implements Entity<Long> {
+        @Id(generated = true)
+        private long id;
+        @Column
+        private String title;
+        @Column("amount")
+        private int amount;
+        @Column
+        private boolean disabled;
+        @Column
+        private Kind kind;
+        @Column
+        private Integer rating;
+        @Column
+        private Date modified;
+        private String transientValue;
+
+        Item() {
+        }
+
+        Item(String title, int amount, Kind kind) {
+            this.title = title;
+            this.amount = amount;
+            this.kind = kind;
+            this.modified = new Date();
+        }
+
+        @Override
+        public Long getPrimaryKey() {
+            return id == 0 ? null : id;
+        }
+    }
+
+    private static final class ItemDAO extends DAOMapped<Item, Long> {
+        ItemDAO(Session session) {
+            super(session, Item.class);
+        }
+    }
+}
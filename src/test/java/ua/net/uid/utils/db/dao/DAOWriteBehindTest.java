@@ -0,0 +1,183 @@
+package ua.net.uid.utils.db.dao;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import ua.net.uid.utils.db.Database;
+import ua.net.uid.utils.db.Session;
+import ua.net.uid.utils.db.query.Condition;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DAOWriteBehindTest {
+    private static JdbcConnectionPool source;
+    private static Database database;
+    private static final AtomicLong ids = new AtomicLong();
+
+    @BeforeAll
+    static void beforeAll() throws SQLException {
+        source = JdbcConnectionPool.create(String.format("jdbc:h2:mem:x%d", System.nanoTime()), "sa", "");
+        database = new Database(source, true);
+        database.query("CREATE TABLE events (id BIGINT NOT NULL PRIMARY KEY, source VARCHAR(20) NOT NULL, payload VARCHAR(30) NOT NULL)").execute();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        source.dispose();
+    }
+
+    @Test
+    void concurrentInserts() throws Exception {
+        DAOWriteBehind<Event, Long> dao = new DAOWriteBehind<>(new EventDAO(database), 100, 50, 5);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 4; ++t) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 1000; ++i)
+                        if (!dao.insert(new Event("concurrent", "event " + i)))
+                            throw new IllegalStateException("event " + i + " was rejected");
+                } catch (SQLException | RuntimeException ex) {
+                    errors.add(ex);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(Collections.emptyList(), errors);
+        dao.flush();
+        assertEquals(0, dao.getPending());
+        assertEquals(4000, dao.getWritten());
+        assertEquals(4000, dao.countBy(Condition.raw("source = ?", "concurrent")));
+        dao.close();
+        assertThrows(IllegalStateException.class, () -> dao.insert(new Event("concurrent", "late")));
+    }
+
+    @Test
+    void failedItems() throws Exception {
+        List<Event> failed = Collections.synchronizedList(new ArrayList<>());
+        DAOWriteBehind<Event, Long> dao = new DAOWriteBehind<>(new EventDAO(database), 100, 10, 1000)
+                .onError((item, error) -> failed.add(item));
+        Event duplicate = new Event("failed", "first");
+        dao.insert(duplicate);
+        dao.flush();
+        dao.insert(new Event("failed", "second"));
+        Event copy = new Event("failed", "copy");
+        copy.id = duplicate.id;
+        dao.insert(copy);
+        Event invalid = new Event("failed", null);
+        dao.insert(invalid);
+        dao.insert(new Event("failed", "third"));
+        dao.close();
+        assertEquals(2, dao.getFailed());
+        assertEquals(3, dao.getWritten());
+        assertTrue(failed.contains(copy));
+        assertTrue(failed.contains(invalid));
+        assertEquals(3, dao.countBy(Condition.raw("source = ?", "failed")));
+    }
+
+    @Test
+    void customWriterFallback() throws Exception {
+        EventDAO target = new EventDAO(database);
+        List<Integer> chunks = Collections.synchronizedList(new ArrayList<>());
+        List<Event> failed = Collections.synchronizedList(new ArrayList<>());
+        DAOWriteBehind<Event, Long> dao = new DAOWriteBehind<>(target, 100, 10, 1000).writer(chunk -> {
+            chunks.add(chunk.size());
+            for (Event event : chunk)
+                if ("reject".equals(event.payload))
+                    throw new SQLException("rejected by writer");
+            target.insertAll(chunk);
+        }).onError((item, error) -> failed.add(item));
+        Event rejected = new Event("writer", "reject");
+        dao.insert(new Event("writer", "first"));
+        dao.insert(rejected);
+        dao.insert(new Event("writer", "second"));
+        dao.close();
+        assertEquals(Arrays.asList(3, 1, 1, 1), chunks);
+        assertEquals(Collections.singletonList(rejected), failed);
+        assertEquals(2, dao.getWritten());
+        assertEquals(2, dao.countBy(Condition.raw("source = ?", "writer")));
+    }
+
+    @Test
+    void flusherError() throws Exception {
+        DAOWriteBehind<Event, Long> dao = new DAOWriteBehind<>(new EventDAO(database), 2, 1, 0).writer(chunk -> {
+            throw new AssertionError("writer crashed");
+        });
+        dao.insert(new Event("error", "first"));
+        SQLException error = assertThrows(SQLException.class, dao::flush);
+        assertTrue(error.getCause() instanceof AssertionError);
+        assertThrows(IllegalStateException.class, () -> dao.insert(new Event("error", "second")));
+        assertThrows(IllegalStateException.class, () -> dao.offer(new Event("error", "third"), 1, TimeUnit.SECONDS));
+        assertThrows(IllegalStateException.class, dao::close);
+        assertEquals(0, dao.getWritten());
+    }
+
+    @Test
+    void backpressure() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        EventDAO target = new EventDAO(database);
+        DAOWriteBehind<Event, Long> dao = new DAOWriteBehind<>(target, 4, 2, 0).writer(chunk -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                throw new SQLException(ex);
+            }
+            target.insertAll(chunk);
+        });
+        dao.insert(new Event("backpressure", "0"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 4; ++i)
+            assertTrue(dao.offer(new Event("backpressure", String.valueOf(i)), 1, TimeUnit.SECONDS));
+        assertFalse(dao.offer(new Event("backpressure", "5"), 10, TimeUnit.MILLISECONDS));
+        assertEquals(4, dao.getPending());
+        release.countDown();
+        dao.flush();
+        assertEquals(5, dao.countBy(Condition.raw("source = ?", "backpressure")));
+        dao.close();
+    }
+
+    @Table("events")
+    static final class Event implements Entity<Long> {
+        @Id
+        private long id;
+        @Column
+        private String source;
+        @Column
+        private String payload;
+
+        Event() {
+        }
+
+        Event(String source, String payload) {
+            this.id = ids.incrementAndGet();
+            this.source = source;
+            this.payload = payload;
+        }
+
+        @Override
+        public Long getPrimaryKey() {
+            return id;
+        }
+    }
+
+    private static final class EventDAO extends DAOMapped<Event, Long> {
+        EventDAO(Session session) {
+            super(session, Event.class);
+        }
+    }
+}
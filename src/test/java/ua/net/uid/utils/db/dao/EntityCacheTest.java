@@ -0,0 +1,166 @@
+package ua.net.uid.utils.db.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityCacheTest {
+    @Test
+    void loadAndHit() throws SQLException {
+        EntityCache<Integer, String> cache = new EntityCache<>(10);
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals("1", cache.get(1, key -> { loads.incrementAndGet(); return key.toString(); }));
+        assertEquals("1", cache.get(1, key -> { loads.incrementAndGet(); return key.toString(); }));
+        assertNull(cache.get(2, key -> null));
+        assertNull(cache.get(2, key -> null));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(3, cache.getLoads());
+        assertEquals(0.25, cache.getHitRatio());
+        assertEquals(1, cache.size());
+
+        cache.invalidate(1);
+        assertNull(cache.getIfPresent(1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void loadFailure() {
+        EntityCache<Integer, String> cache = new EntityCache<>(10);
+        assertThrows(SQLException.class, () -> cache.get(1, key -> { throw new SQLException("test"); }));
+        assertEquals(1, cache.getLoadFailures());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void segmentedEviction() throws SQLException {
+        EntityCache<Integer, String> cache = new EntityCache<>(5);
+        for (int i = 0; i < 5; ++i) cache.put(i, "v" + i);
+        assertEquals("v0", cache.getIfPresent(0));
+        assertEquals("v1", cache.getIfPresent(1));
+        for (int i = 5; i < 10; ++i) cache.put(i, "v" + i);
+        assertEquals(5, cache.size());
+        assertEquals(5, cache.getEvictions());
+        assertEquals("v0", cache.getIfPresent(0));
+        assertEquals("v1", cache.getIfPresent(1));
+        assertNull(cache.getIfPresent(5));
+        assertEquals("v9", cache.getIfPresent(9));
+    }
+
+    @Test
+    void expiration() throws Exception {
+        EntityCache<Integer, String> cache = new EntityCache<>(10, 20);
+        cache.put(1, "v1");
+        assertEquals("v1", cache.getIfPresent(1));
+        Thread.sleep(40);
+        assertNull(cache.getIfPresent(1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void coalesceLoads() throws Exception {
+        EntityCache<Integer, String> cache = new EntityCache<>(10);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executor.submit(() -> cache.get(1, key -> {
+                loads.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new SQLException(ex);
+                }
+                return "v1";
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(() -> cache.get(1, key -> { loads.incrementAndGet(); return "other"; }));
+            Future<String> third = executor.submit(() -> cache.get(1, key -> { loads.incrementAndGet(); return "other"; }));
+            Thread.sleep(20);
+            release.countDown();
+            assertEquals("v1", first.get(5, TimeUnit.SECONDS));
+            assertEquals("v1", second.get(5, TimeUnit.SECONDS));
+            assertEquals("v1", third.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void invalidateWhileLoading() throws SQLException {
+        EntityCache<Integer, String> cache = new EntityCache<>(10);
+        assertEquals("stale", cache.get(1, key -> {
+            cache.invalidate(key);
+            return "stale";
+        }));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void bulkLoad() throws SQLException {
+        EntityCache<Integer, String> cache = new EntityCache<>(10);
+        cache.put(1, "v1");
+        Map<Integer, String> result = cache.getAll(Arrays.asList(1, 2, 3, 4, 2), keys -> {
+            assertEquals(Arrays.asList(2, 3, 4), new ArrayList<>(keys));
+            cache.invalidate(3);
+            Map<Integer, String> loaded = new HashMap<>();
+            for (Integer key : keys)
+                if (key != 4) loaded.put(key, "v" + key);
+            return loaded;
+        });
+        assertEquals(3, result.size());
+        assertEquals("v3", result.get(3));
+        assertEquals("v2", cache.getIfPresent(2));
+        assertNull(cache.getIfPresent(3));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getLoads());
+
+        assertThrows(SQLException.class, () -> cache.getAll(Arrays.asList(5, 6), keys -> { throw new SQLException("test"); }));
+        assertEquals("v5", cache.get(5, key -> "v" + key));
+    }
+
+    @Test
+    void loadError() throws Exception {
+        EntityCache<Integer, String> cache = new EntityCache<>(10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> failing = executor.submit(() -> cache.get(1, key -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new SQLException(ex);
+                }
+                throw new LinkageError("test");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> waiting = executor.submit(() -> cache.get(1, key -> "unused"));
+            Thread.sleep(50);
+            release.countDown();
+            assertTrue(assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS)).getCause() instanceof LinkageError);
+            assertTrue(assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS)).getCause() instanceof LinkageError);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("v1", cache.get(1, key -> "v" + key));
+    }
+}
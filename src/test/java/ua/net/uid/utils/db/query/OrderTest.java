@@ -0,0 +1,53 @@
+package ua.net.uid.utils.db.query;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderTest {
+    @Test
+    void orderTest() {
+        Order order = Order.by().asc("title").descNullLast("LOWER(?)", "x");
+        assertEquals(2, order.size());
+        StringBuilder builder = new StringBuilder();
+        order.build(builder);
+        assertEquals(" ORDER BY title ASC, LOWER(?) DESC NULLS LAST", builder.toString());
+    }
+
+    @Test
+    void afterSingleTest() {
+        assertNull(Order.by().asc("id").after());
+        assertEquals("id > ?", Order.by().asc("id").after(1).toString());
+        assertEquals("id < ?", Order.by().desc("id").after(1).toString());
+        assertArrayEquals(new Object[]{1}, Order.by().desc("id").after(1).toParams());
+        assertThrows(IllegalArgumentException.class, () -> Order.by().asc("id").after(1, 2));
+    }
+
+    @Test
+    void afterUniformTest() {
+        Condition condition = Order.by().asc("a").asc("b").after(1, 2);
+        assertEquals("(a, b) > (?, ?)", condition.toString());
+        assertArrayEquals(new Object[]{1, 2}, condition.toParams());
+
+        condition = Order.by().desc("a").desc("COALESCE(b, ?)", 0).after(1, 2);
+        assertEquals("(a, COALESCE(b, ?)) < (?, ?)", condition.toString());
+        assertArrayEquals(new Object[]{0, 1, 2}, condition.toParams());
+    }
+
+    @Test
+    void afterMixedTest() {
+        Condition condition = Order.by().desc("a").asc("b").asc("c").after(1, 2, 3);
+        assertEquals("(a < ?) OR (a = ? AND b > ?) OR (a = ? AND b = ? AND c > ?)", condition.toString());
+        assertArrayEquals(new Object[]{1, 1, 2, 1, 2, 3}, condition.toParams());
+    }
+
+    @Test
+    void selectionTest() {
+        assertNull(Order.by().asc("id").desc("t.\"title\"").selection());
+        QueryPart selection = Order.by().asc("COALESCE(b, ?)", 0).as("b_key").asc("id").selection();
+        assertEquals(", COALESCE(b, ?) AS b_key", selection.toString());
+        assertArrayEquals(new Object[]{0}, ((Condition) selection).toParams());
+        assertThrows(IllegalArgumentException.class, () -> Order.by().asc("id").asc("LOWER(title)").selection());
+        assertThrows(IllegalStateException.class, () -> Order.by().as("x"));
+    }
+}
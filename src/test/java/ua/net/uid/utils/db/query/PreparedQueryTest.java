@@ -0,0 +1,56 @@
+package ua.net.uid.utils.db.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PreparedQueryTest {
+    private static PreparedQuery compile() {
+        return new QueryBuilder()
+                .append("SELECT * FROM items WHERE ", Condition.and(
+                        Condition.raw("type = ?", 1),
+                        Condition.raw("value > ? AND value < ?", Slot.of("min"), Slot.of("max")),
+                        Condition.raw("parent <> ?", Slot.of("min"))
+                ))
+                .append(" LIMIT ?", Slot.of("limit"))
+                .compile();
+    }
+
+    @Test
+    void compileTest() {
+        PreparedQuery query = compile();
+        assertEquals("SELECT * FROM items WHERE (type = ?) AND (value > ? AND value < ?) AND (parent <> ?) LIMIT ?", query.getQuery());
+        assertArrayEquals(new String[]{"min", "max", "limit"}, query.getNames());
+    }
+
+    @Test
+    void positionalBindTest() {
+        PreparedQuery query = compile();
+        Query bound = query.bind(10, 20, 5);
+        assertSame(query.getQuery(), bound.getQuery());
+        assertArrayEquals(new Object[]{1, 10, 20, 10, 5}, bound.getParams());
+        assertArrayEquals(new Object[]{1, 11, 21, 11, 6}, query.toParams(11, 21, 6));
+        assertThrows(IllegalArgumentException.class, () -> query.bind(1, 2));
+    }
+
+    @Test
+    void namedBindTest() {
+        PreparedQuery query = compile();
+        Map<String, Object> values = new HashMap<>();
+        values.put("min", 10);
+        values.put("max", null);
+        assertThrows(IllegalArgumentException.class, () -> query.bind(values));
+        values.put("limit", 5);
+        assertArrayEquals(new Object[]{1, 10, null, 10, 5}, query.bind(values).getParams());
+    }
+
+    @Test
+    void slotTest() {
+        assertThrows(IllegalArgumentException.class, () -> Slot.of(""));
+        assertEquals(Slot.of("id"), Slot.of("id"));
+        assertEquals(":id", Slot.of("id").toString());
+    }
+}